@@ -0,0 +1,37 @@
+package com.ici.mysched;
+
+import android.app.job.JobParameters;
+import android.app.job.JobService;
+import android.util.Log;
+
+/**
+ * Idle-time maintenance job that runs {@link AlarmAudit} off the main
+ * thread. Scheduled by {@link AlarmAudit#ensureScheduled}.
+ */
+public class AlarmAuditJobService extends JobService {
+    private static final String TAG = "MySched";
+    private static final String LOG_SCOPE = "AlarmAuditJob";
+
+    @Override
+    public boolean onStartJob(JobParameters params) {
+        new Thread(() -> {
+            boolean reschedule = false;
+            try {
+                AlarmAudit.run(getApplicationContext());
+            } catch (Exception e) {
+                Log.e(TAG, "[" + LOG_SCOPE + "] Audit failed: " + e.getMessage(), e);
+                reschedule = true;
+            }
+            jobFinished(params, reschedule);
+        }, "AlarmAudit").start();
+        return true;
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        // The pass is short and idempotent, so the worker thread is left to
+        // finish it. No retry: the periodic job runs again next window.
+        Log.i(TAG, "[" + LOG_SCOPE + "] Stopped by the system");
+        return false;
+    }
+}
@@ -17,6 +17,9 @@ public class AlarmDismissReceiver extends BroadcastReceiver {
 		String occurrenceKey = intent.getStringExtra("occurrenceKey");
 		if (classId != -1 && occurrenceKey != null && !occurrenceKey.isEmpty()) {
 			AlarmPrefsHelper.setOccurrenceAcknowledged(context, classId, occurrenceKey, true);
+			// Write the ack off the main thread before the process may be reclaimed.
+			PendingResult pending = goAsync();
+			AlarmStore.flushAsync(context, pending::finish);
 		}
 	}
 }
@@ -1,17 +1,21 @@
 package com.ici.mysched;
 
 import android.app.Notification;
-import android.app.NotificationChannel;
-import android.app.NotificationManager;
 import android.app.PendingIntent;
 import android.app.Service;
 import android.content.Context;
 import android.content.Intent;
 import android.os.Build;
+import android.os.Handler;
 import android.os.IBinder;
-import android.os.PowerManager;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Log;
 import androidx.core.app.NotificationCompat;
+import androidx.core.app.NotificationManagerCompat;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * Foreground service for reliable alarm delivery on Android 11-15.
@@ -20,33 +24,58 @@ import androidx.core.app.NotificationCompat;
  * - App is in background
  * - Battery optimization is enabled
  * 
- * The service starts briefly when an alarm is about to fire,
- * ensuring the system doesn't kill the app during alarm delivery.
+ * Alarms that fire while another one is ringing are queued. The alarm
+ * screen reports when it shows and closes an alarm, and the next queued
+ * alarm is presented only after the previous screen is gone. One
+ * foreground notification summarizes the queue, and the service stops
+ * when the queue is empty. An alarm whose screen never appears is dropped
+ * after {@link #PRESENT_TIMEOUT_MS}; its backup notification remains.
  */
 public class AlarmForegroundService extends Service {
     private static final String TAG = "MySched";
     private static final String LOG_SCOPE = "AlarmFgService";
     
-    private static final String CHANNEL_ID = "mysched_alarm_service_channel";
+    private static final String CHANNEL_ID = NotificationChannelRegistry.ALARM_SERVICE;
     private static final int NOTIFICATION_ID = 8888;
     
     public static final String ACTION_START_ALARM = "com.ici.mysched.ACTION_START_ALARM";
     public static final String ACTION_STOP = "com.ici.mysched.ACTION_STOP_SERVICE";
     
-    private PowerManager.WakeLock wakeLock;
+    private static final long PRESENT_TIMEOUT_MS = 10_000L;
+    private static final long RING_TIMEOUT_MS = 3 * 60 * 1000L;
+    
+    /** Running instance; only touched on the main thread. */
+    private static AlarmForegroundService instance;
+    
+    private static final class ActiveAlarm {
+        final AlarmPayload payload;
+        final long scheduledElapsed;
+        long deadline;
+        
+        ActiveAlarm(AlarmPayload payload, long scheduledElapsed) {
+            this.payload = payload;
+            this.scheduledElapsed = scheduledElapsed;
+        }
+    }
+    
+    private final LinkedHashMap<Integer, ActiveAlarm> queue = new LinkedHashMap<>();
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable expireRunnable = this::expireStale;
+    private Integer presentingId;
+    private int handled;
     
     @Override
     public void onCreate() {
         super.onCreate();
+        instance = this;
         logDebug("Service created");
-        createNotificationChannel();
-        acquireWakeLock();
+        NotificationChannelRegistry.ensure(this);
     }
     
     @Override
     public int onStartCommand(Intent intent, int flags, int startId) {
         if (intent == null) {
-            stopSelf();
+            if (queue.isEmpty()) stopSelf();
             return START_NOT_STICKY;
         }
         
@@ -54,89 +83,117 @@ public class AlarmForegroundService extends Service {
         logDebug("onStartCommand: " + action);
         
         if (ACTION_STOP.equals(action)) {
-            stopForeground(true);
-            stopSelf();
+            AlarmWakeLocks.releaseAll(this, AlarmWakeLocks.HOLDER_SERVICE);
+            queue.clear();
+            presentingId = null;
+            stopWhenIdle();
             return START_NOT_STICKY;
         }
         
         if (ACTION_START_ALARM.equals(action)) {
-            // Start as foreground service immediately
-            startForeground(NOTIFICATION_ID, buildForegroundNotification());
-            
-            // Extract alarm data and forward to AlarmReceiver logic
-            String title = intent.getStringExtra("title");
-            String body = intent.getStringExtra("body");
-            int requestCode = intent.getIntExtra("requestCode", 0);
-            int classId = intent.getIntExtra("classId", -1);
-            String occurrenceKey = intent.getStringExtra("occurrenceKey");
-            String subject = intent.getStringExtra("subject");
-            String room = intent.getStringExtra("room");
-            String startTime = intent.getStringExtra("startTime");
-            String endTime = intent.getStringExtra("endTime");
+            AlarmPayload payload = AlarmPayload.from(intent);
+            ActiveAlarm alarm = new ActiveAlarm(
+                payload, intent.getLongExtra(AlarmLatency.EXTRA_SCHEDULED_ELAPSED, 0L));
+            alarm.deadline = SystemClock.elapsedRealtime() + PRESENT_TIMEOUT_MS;
+            queue.put(payload.getRequestCode(), alarm);
+            handled++;
             
-            // Launch fullscreen alarm activity
-            launchFullscreenAlarm(
-                title, body, requestCode, classId, occurrenceKey,
-                subject, room, startTime, endTime
-            );
+            // Start (or stay) in the foreground with the updated summary
+            startForeground(NOTIFICATION_ID, buildForegroundNotification());
+            AlarmLatency.mark(this, AlarmLatency.STAGE_SERVICE, intent);
+            AlarmWakeLocks.handOff(
+                this, payload.getRequestCode(), AlarmWakeLocks.HOLDER_SERVICE, 5 * 60 * 1000);
             
-            // Auto-stop service after alarm is delivered (10 seconds buffer)
-            new android.os.Handler(android.os.Looper.getMainLooper()).postDelayed(() -> {
-                stopForeground(true);
-                stopSelf();
-            }, 10000);
+            if (presentingId == null) {
+                presentNext();
+            } else {
+                logDebug("Queued alarm " + payload.getRequestCode() + " behind " + presentingId);
+            }
+            scheduleExpiry();
         }
         
         return START_NOT_STICKY;
     }
     
-    private void launchFullscreenAlarm(
-        String title, String body, int requestCode, int classId,
-        String occurrenceKey, String subject, String room,
-        String startTime, String endTime
-    ) {
-        try {
-            Intent fullscreenIntent = new Intent(this, FullscreenAlarmActivity.class);
-            fullscreenIntent.putExtra("title", title);
-            fullscreenIntent.putExtra("body", body);
-            fullscreenIntent.putExtra("requestCode", requestCode);
-            fullscreenIntent.putExtra("classId", classId);
-            fullscreenIntent.putExtra("occurrenceKey", occurrenceKey != null ? occurrenceKey : "");
-            if (subject != null) fullscreenIntent.putExtra("subject", subject);
-            if (room != null) fullscreenIntent.putExtra("room", room);
-            if (startTime != null) fullscreenIntent.putExtra("startTime", startTime);
-            if (endTime != null) fullscreenIntent.putExtra("endTime", endTime);
-            
-            fullscreenIntent.addFlags(
-                Intent.FLAG_ACTIVITY_NEW_TASK |
-                Intent.FLAG_ACTIVITY_CLEAR_TOP |
-                Intent.FLAG_ACTIVITY_SINGLE_TOP |
-                Intent.FLAG_ACTIVITY_EXCLUDE_FROM_RECENTS
-            );
-            
-            startActivity(fullscreenIntent);
-            logDebug("Fullscreen alarm activity launched from foreground service");
-        } catch (Exception e) {
-            logError("Failed to launch fullscreen alarm", e);
-        }
+    /** Called by the alarm screen once it is showing {@code alarmId}. */
+    public static void onAlarmPresented(int alarmId) {
+        AlarmForegroundService service = instance;
+        if (service == null) return;
+        ActiveAlarm alarm = service.queue.get(alarmId);
+        if (alarm == null) return;
+        alarm.deadline = SystemClock.elapsedRealtime() + RING_TIMEOUT_MS;
+        service.scheduleExpiry();
     }
     
-    private void createNotificationChannel() {
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-            NotificationChannel channel = new NotificationChannel(
-                CHANNEL_ID,
-                "Alarm Service",
-                NotificationManager.IMPORTANCE_LOW
-            );
-            channel.setDescription("Ensures alarms fire reliably");
-            channel.setShowBadge(false);
-            channel.setSound(null, null);
-            
-            NotificationManager nm = getSystemService(NotificationManager.class);
-            if (nm != null) {
-                nm.createNotificationChannel(channel);
+    /** Called by the alarm screen when it goes away; presents the next queued alarm. */
+    public static void onAlarmClosed(int alarmId) {
+        AlarmForegroundService service = instance;
+        if (service != null) service.finishAlarm(alarmId);
+    }
+    
+    private void presentNext() {
+        while (!queue.isEmpty()) {
+            ActiveAlarm next = queue.values().iterator().next();
+            int id = next.payload.getRequestCode();
+            presentingId = id;
+            next.deadline = SystemClock.elapsedRealtime() + PRESENT_TIMEOUT_MS;
+            // Forward the payload to the alarm screen unchanged
+            if (AlarmDispatcher.launchActivity(this, next.payload, next.scheduledElapsed)) {
+                return;
             }
+            queue.remove(id);
+            AlarmWakeLocks.release(this, id, AlarmWakeLocks.HOLDER_SERVICE);
+        }
+        presentingId = null;
+        stopWhenIdle();
+    }
+    
+    private void finishAlarm(int alarmId) {
+        if (queue.remove(alarmId) == null) return;
+        AlarmWakeLocks.release(this, alarmId, AlarmWakeLocks.HOLDER_SERVICE);
+        if (presentingId != null && presentingId == alarmId) {
+            presentingId = null;
+        }
+        if (queue.isEmpty()) {
+            stopWhenIdle();
+            return;
+        }
+        NotificationManagerCompat.from(this).notify(NOTIFICATION_ID, buildForegroundNotification());
+        if (presentingId == null) {
+            presentNext();
         }
+        scheduleExpiry();
+    }
+    
+    private void expireStale() {
+        long now = SystemClock.elapsedRealtime();
+        ArrayList<Integer> expired = new ArrayList<>();
+        for (Map.Entry<Integer, ActiveAlarm> entry : queue.entrySet()) {
+            if (entry.getValue().deadline <= now) expired.add(entry.getKey());
+        }
+        for (int id : expired) {
+            logDebug("Alarm " + id + " timed out in the queue");
+            finishAlarm(id);
+        }
+        scheduleExpiry();
+    }
+    
+    private void scheduleExpiry() {
+        handler.removeCallbacks(expireRunnable);
+        long earliest = Long.MAX_VALUE;
+        for (ActiveAlarm alarm : queue.values()) {
+            earliest = Math.min(earliest, alarm.deadline);
+        }
+        if (earliest == Long.MAX_VALUE) return;
+        handler.postDelayed(expireRunnable, Math.max(0L, earliest - SystemClock.elapsedRealtime()));
+    }
+    
+    private void stopWhenIdle() {
+        if (!queue.isEmpty()) return;
+        handler.removeCallbacks(expireRunnable);
+        logDebug("Queue empty after " + handled + " alarm(s), stopping");
+        stopForeground(true);
+        stopSelf();
     }
     
     private Notification buildForegroundNotification() {
@@ -148,48 +205,47 @@ public class AlarmForegroundService extends Service {
                 (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M ? PendingIntent.FLAG_IMMUTABLE : 0)
         );
         
-        return new NotificationCompat.Builder(this, CHANNEL_ID)
-            .setContentTitle("Alarm Active")
-            .setContentText("Your alarm is ringing...")
+        NotificationCompat.Builder builder = new NotificationCompat.Builder(this, CHANNEL_ID)
             .setSmallIcon(android.R.drawable.ic_lock_idle_alarm)
             .setPriority(NotificationCompat.PRIORITY_LOW)
             .setCategory(NotificationCompat.CATEGORY_SERVICE)
             .setOngoing(true)
-            .addAction(android.R.drawable.ic_menu_close_clear_cancel, "Stop", stopPi)
-            .build();
-    }
-    
-    private void acquireWakeLock() {
-        try {
-            PowerManager pm = (PowerManager) getSystemService(Context.POWER_SERVICE);
-            if (pm != null) {
-                wakeLock = pm.newWakeLock(
-                    PowerManager.PARTIAL_WAKE_LOCK,
-                    "MySched:AlarmForegroundService"
-                );
-                wakeLock.acquire(5 * 60 * 1000); // 5 minutes max
-                logDebug("Wake lock acquired");
-            }
-        } catch (Exception e) {
-            logError("Failed to acquire wake lock", e);
+            .setOnlyAlertOnce(true)
+            .addAction(android.R.drawable.ic_menu_close_clear_cancel, "Stop", stopPi);
+        if (queue.size() <= 1) {
+            String label = queue.isEmpty() ? null : labelFor(queue.values().iterator().next().payload);
+            return builder
+                .setContentTitle(label != null ? label : "Alarm Active")
+                .setContentText("Your alarm is ringing...")
+                .build();
         }
+        NotificationCompat.InboxStyle style = new NotificationCompat.InboxStyle();
+        StringBuilder summary = new StringBuilder();
+        for (ActiveAlarm alarm : queue.values()) {
+            String label = labelFor(alarm.payload);
+            style.addLine(label);
+            if (summary.length() > 0) summary.append(", ");
+            summary.append(label);
+        }
+        return builder
+            .setContentTitle(queue.size() + " alarms ringing")
+            .setContentText(summary)
+            .setStyle(style)
+            .build();
     }
     
-    private void releaseWakeLock() {
-        try {
-            if (wakeLock != null && wakeLock.isHeld()) {
-                wakeLock.release();
-                wakeLock = null;
-                logDebug("Wake lock released");
-            }
-        } catch (Exception e) {
-            logError("Failed to release wake lock", e);
-        }
+    private static String labelFor(AlarmPayload payload) {
+        String subject = payload.getSubject();
+        if (subject != null && !subject.isEmpty()) return subject;
+        String title = payload.getTitle();
+        return title != null && !title.isEmpty() ? title : "Alarm";
     }
     
     @Override
     public void onDestroy() {
-        releaseWakeLock();
+        handler.removeCallbacks(expireRunnable);
+        AlarmWakeLocks.releaseAll(this, AlarmWakeLocks.HOLDER_SERVICE);
+        if (instance == this) instance = null;
         logDebug("Service destroyed");
         super.onDestroy();
     }
@@ -203,21 +259,17 @@ public class AlarmForegroundService extends Service {
         Log.d(TAG, "[" + LOG_SCOPE + "] " + message);
     }
     
-    private void logError(String message, Exception e) {
-        Log.e(TAG, "[" + LOG_SCOPE + "] " + message, e);
-    }
-    
     /**
      * Static helper to start this service for an alarm.
      * Works on Android 8+ with foreground service restrictions.
+     * Returns false when the system refused to start it.
      */
-    public static void startForAlarm(Context context, Intent alarmData) {
+    public static boolean startForAlarm(Context context, AlarmPayload payload, long scheduledElapsed) {
         Intent serviceIntent = new Intent(context, AlarmForegroundService.class);
         serviceIntent.setAction(ACTION_START_ALARM);
-        
-        // Copy alarm data
-        if (alarmData != null) {
-            serviceIntent.putExtras(alarmData);
+        serviceIntent.putExtra(AlarmPayload.EXTRA_PAYLOAD, payload);
+        if (scheduledElapsed > 0L) {
+            serviceIntent.putExtra(AlarmLatency.EXTRA_SCHEDULED_ELAPSED, scheduledElapsed);
         }
         
         try {
@@ -227,8 +279,10 @@ public class AlarmForegroundService extends Service {
                 context.startService(serviceIntent);
             }
             Log.d(TAG, "[" + LOG_SCOPE + "] Foreground service started for alarm");
+            return true;
         } catch (Exception e) {
             Log.e(TAG, "[" + LOG_SCOPE + "] Failed to start foreground service", e);
+            return false;
         }
     }
 }
@@ -0,0 +1,28 @@
+package com.ici.mysched;
+
+import java.util.Calendar;
+import java.util.Locale;
+
+/**
+ * Id and key derivation for natively scheduled alarms. Kept free of
+ * Android types so the JVM benchmarks under android/benchmark can use it.
+ */
+public final class AlarmIds {
+    private AlarmIds() {}
+
+    public static int snoozeRequestCode(int classId, long triggerAt) {
+        long hash = 17L;
+        hash = hash * 31L + classId;
+        hash = hash * 31L + (triggerAt & 0x7fffffffL);
+        return (int) (Math.abs(hash) & 0x7fffffff);
+    }
+
+    public static String occurrenceKey(long millis) {
+        Calendar cal = Calendar.getInstance();
+        cal.setTimeInMillis(millis);
+        int year = cal.get(Calendar.YEAR);
+        int month = cal.get(Calendar.MONTH) + 1;
+        int day = cal.get(Calendar.DAY_OF_MONTH);
+        return String.format(Locale.US, "%04d%02d%02d", year, month, day);
+    }
+}
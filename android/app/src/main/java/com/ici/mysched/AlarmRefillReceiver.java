@@ -0,0 +1,30 @@
+package com.ici.mysched;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.util.Log;
+
+/**
+ * Fired by the {@link AlarmWindow} sentinel once half of the armed window
+ * has passed; arms the next window from the persisted plan.
+ */
+public class AlarmRefillReceiver extends BroadcastReceiver {
+    private static final String TAG = "MySched";
+    private static final String LOG_SCOPE = "AlarmRefillReceiver";
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        final Context appContext = context.getApplicationContext();
+        final PendingResult pending = goAsync();
+        new Thread(() -> {
+            try {
+                AlarmWindow.refill(appContext);
+            } catch (Exception e) {
+                Log.e(TAG, "[" + LOG_SCOPE + "] Refill failed: " + e.getMessage(), e);
+            } finally {
+                pending.finish();
+            }
+        }, "AlarmWindowRefill").start();
+    }
+}
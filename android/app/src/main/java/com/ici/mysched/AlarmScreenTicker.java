@@ -0,0 +1,101 @@
+package com.ici.mysched;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.widget.TextView;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * Single ticker for the alarm screen's clock and auto-dismiss countdown.
+ *
+ * Each tick is posted for the next second boundary of the countdown, or the
+ * next minute boundary of the clock once the countdown has ended. A view's
+ * text is set only when its value changes: the clock once a minute, the
+ * countdown once a second. The clock reuses one formatter and one
+ * {@link Date}. The countdown writes digits into a fixed char buffer, so
+ * ticks that change nothing allocate nothing. The activity calls
+ * {@link #start} and {@link #stop} as it becomes visible or hidden.
+ */
+final class AlarmScreenTicker implements Runnable {
+    private static final String COUNTDOWN_PREFIX = "Alarm stops in ";
+    private static final String COUNTDOWN_DONE = "Alarm stopping...";
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final TextView clockView;
+    private final TextView countdownView;
+    private final long countdownEndElapsed;
+
+    private final SimpleDateFormat clockFormat = new SimpleDateFormat("h:mm", Locale.getDefault());
+    private final Date clockDate = new Date();
+    private long shownMinute = Long.MIN_VALUE;
+
+    private final char[] countdownChars;
+    private long shownSeconds = Long.MIN_VALUE;
+    private boolean running;
+
+    AlarmScreenTicker(TextView clockView, TextView countdownView, long countdownEndElapsed) {
+        this.clockView = clockView;
+        this.countdownView = countdownView;
+        this.countdownEndElapsed = countdownEndElapsed;
+        countdownChars = (COUNTDOWN_PREFIX + "00:00").toCharArray();
+    }
+
+    void start() {
+        if (running) return;
+        running = true;
+        run();
+    }
+
+    void stop() {
+        running = false;
+        handler.removeCallbacks(this);
+    }
+
+    @Override
+    public void run() {
+        if (!running) return;
+        long wallNow = System.currentTimeMillis();
+        long elapsedNow = SystemClock.elapsedRealtime();
+
+        long minute = wallNow / 60_000L;
+        if (clockView != null && minute != shownMinute) {
+            shownMinute = minute;
+            clockDate.setTime(wallNow);
+            clockView.setText(clockFormat.format(clockDate));
+        }
+        long delay = 60_000L - wallNow % 60_000L;
+
+        long remaining = countdownEndElapsed - elapsedNow;
+        if (countdownView != null) {
+            // Round up so the display reaches 00:00 just as the alarm stops.
+            long seconds = remaining > 0 ? (remaining + 999) / 1000 : 0;
+            if (seconds != shownSeconds) {
+                shownSeconds = seconds;
+                showCountdown(seconds);
+            }
+            if (remaining > 0) {
+                long toNextSecond = remaining % 1000;
+                delay = Math.min(delay, toNextSecond == 0 ? 1000 : toNextSecond);
+            }
+        }
+        handler.postDelayed(this, delay);
+    }
+
+    private void showCountdown(long seconds) {
+        if (seconds <= 0) {
+            countdownView.setText(COUNTDOWN_DONE);
+            return;
+        }
+        int minutes = (int) Math.min(99, seconds / 60);
+        int secs = (int) (seconds % 60);
+        int at = COUNTDOWN_PREFIX.length();
+        countdownChars[at] = (char) ('0' + minutes / 10);
+        countdownChars[at + 1] = (char) ('0' + minutes % 10);
+        countdownChars[at + 3] = (char) ('0' + secs / 10);
+        countdownChars[at + 4] = (char) ('0' + secs % 10);
+        countdownView.setText(countdownChars, 0, countdownChars.length);
+    }
+}
@@ -10,6 +10,17 @@ import android.util.Log;
  * Handles device boot completion to reschedule alarms.
  * This is critical for alarm reliability across device restarts.
  * 
+ * Alarms are re-armed headlessly from the payloads persisted by
+ * {@link AlarmScheduler}; the Flutter engine is not started. The
+ * "tap to restore" notification is only posted when some tracked alarms
+ * have no payload (armed by an older build) or the restore fails.
+ * 
+ * The payloads are in device-protected storage ({@link DirectBoot}), so
+ * LOCKED_BOOT_COMPLETED already re-arms them. The BOOT_COMPLETED after
+ * unlock repeats the restore (already armed alarms are skipped), then
+ * refills the window, schedules the audit, and writes the legacy prefs
+ * view that was left dirty while locked.
+ * 
  * Supports:
  * - Standard Android boot
  * - Quick boot (some manufacturers)
@@ -34,29 +45,56 @@ public class BootReceiver extends BroadcastReceiver {
             "com.htc.intent.action.QUICKBOOT_POWERON".equals(action) ||
             Intent.ACTION_MY_PACKAGE_REPLACED.equals(action)) {
             
-            Log.i(TAG, "[" + LOG_SCOPE + "] Triggering alarm reschedule after boot/update");
+            final Context appContext = context.getApplicationContext();
+            final boolean locked = !DirectBoot.isUnlocked(context);
+            if (locked && !DirectBoot.isMigrated(context)) {
+                // Stores have not been moved out of credential-encrypted
+                // storage yet; the BOOT_COMPLETED that follows unlock restores.
+                Log.i(TAG, "[" + LOG_SCOPE + "] User locked before migration, deferring restore to BOOT_COMPLETED");
+                return;
+            }
             
-            // Option 1: Start MainActivity to trigger Flutter reschedule
-            // This is the simplest approach - Flutter will reschedule alarms on init
-            try {
-                Intent launchIntent = new Intent(context, MainActivity.class);
-                launchIntent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
-                launchIntent.putExtra("from_boot_receiver", true);
-                
-                // For Android 12+, we need to be careful about background restrictions
-                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
-                    // Post a notification to let user know alarms are being restored
-                    // and provide a way to open the app
-                    showRescheduleNotification(context);
-                } else {
-                    // On older versions, we can start activity directly
-                    // But actually, let's use notification approach for all versions
-                    // to avoid ANR and be more user-friendly
-                    showRescheduleNotification(context);
+            Log.i(TAG, "[" + LOG_SCOPE + "] Restoring alarms after boot/update" + (locked ? " (locked)" : ""));
+            
+            final PendingResult pending = goAsync();
+            new Thread(() -> {
+                try {
+                    if (locked) {
+                        restoreLockedAlarms(appContext);
+                    } else {
+                        restoreAlarms(appContext);
+                    }
+                } finally {
+                    pending.finish();
                 }
-            } catch (Exception e) {
-                Log.e(TAG, "[" + LOG_SCOPE + "] Failed to handle boot: " + e.getMessage(), e);
+            }, "AlarmBootRestore").start();
+        }
+    }
+    
+    private void restoreAlarms(Context context) {
+        try {
+            DirectBoot.prepare(context);
+            AlarmScheduler.RestoreResult result = AlarmScheduler.restore(context);
+            AlarmWindow.refill(context);
+            AlarmAudit.ensureScheduled(context);
+            if (result.getUntracked() > 0 || result.getFailed() > 0) {
+                showRescheduleNotification(context);
             }
+        } catch (Exception e) {
+            Log.e(TAG, "[" + LOG_SCOPE + "] Failed to restore alarms: " + e.getMessage(), e);
+            showRescheduleNotification(context);
+        }
+    }
+    
+    /**
+     * Re-arms persisted payloads only. The window refill, audit job, and
+     * notification all need credential-encrypted state and wait for unlock.
+     */
+    private void restoreLockedAlarms(Context context) {
+        try {
+            AlarmScheduler.restore(context);
+        } catch (Exception e) {
+            Log.e(TAG, "[" + LOG_SCOPE + "] Failed to restore alarms while locked: " + e.getMessage(), e);
         }
     }
     
@@ -65,22 +103,8 @@ public class BootReceiver extends BroadcastReceiver {
             android.app.NotificationManager nm = 
                 (android.app.NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
             
-            String channelId = "mysched_boot_channel";
-            
-            // Create notification channel for Android 8+
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-                android.app.NotificationChannel channel = nm.getNotificationChannel(channelId);
-                if (channel == null) {
-                    channel = new android.app.NotificationChannel(
-                        channelId,
-                        "System Messages",
-                        android.app.NotificationManager.IMPORTANCE_LOW
-                    );
-                    channel.setDescription("System notifications for app updates");
-                    channel.setShowBadge(false);
-                    nm.createNotificationChannel(channel);
-                }
-            }
+            String channelId = NotificationChannelRegistry.BOOT;
+            NotificationChannelRegistry.ensure(context);
             
             // Create pending intent to open app
             Intent openIntent = new Intent(context, MainActivity.class);
@@ -1,9 +1,7 @@
 package com.ici.mysched;
 
 import android.app.Activity;
-import android.app.AlarmManager;
 import android.app.KeyguardManager;
-import android.app.NotificationChannel;
 import android.app.NotificationManager;
 import android.app.PendingIntent;
 import android.content.Context;
@@ -18,13 +16,15 @@ import android.os.Build;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Looper;
-import android.os.PowerManager;
+import android.os.SystemClock;
 import android.os.VibrationEffect;
 import android.os.Vibrator;
 import android.content.SharedPreferences;
 import android.content.res.Configuration;
 import android.content.Context;
+import android.graphics.Typeface;
 import android.view.View;
+import android.view.ViewTreeObserver;
 import android.view.Window;
 import android.view.WindowManager;
 import android.widget.Button;
@@ -36,7 +36,7 @@ import androidx.core.view.WindowCompat;
 import androidx.core.view.WindowInsetsCompat;
 import androidx.core.view.WindowInsetsControllerCompat;
 
-import java.util.Calendar;
+import java.util.Collections;
 import java.util.Locale;
 
 import android.app.Activity;
@@ -44,11 +44,15 @@ import android.app.Activity;
 
 
 public class FullscreenAlarmActivity extends Activity {
+    private AlarmPayload payload;
     private String subject;
     private String room;
     private String startTime;
     private String endTime;
     private boolean acknowledged;
+    private long scheduledElapsed;
+    private boolean deliveryRecorded;
+    private long createdAtNanos;
     @Override
     protected void onResume() {
         super.onResume();
@@ -68,23 +72,10 @@ public class FullscreenAlarmActivity extends Activity {
                         WindowManager.LayoutParams.FLAG_LAYOUT_IN_SCREEN |
                         WindowManager.LayoutParams.FLAG_LAYOUT_NO_LIMITS);
         applyImmersiveMode();
-        // Reacquire wake locks aggressively
-        PowerManager powerManager = (PowerManager) getSystemService(Context.POWER_SERVICE);
-        if (wakeLock == null || !wakeLock.isHeld()) {
-            wakeLock = powerManager.newWakeLock(
-                PowerManager.FULL_WAKE_LOCK |
-                PowerManager.ACQUIRE_CAUSES_WAKEUP |
-                PowerManager.ON_AFTER_RELEASE, TAG);
-            wakeLock.acquire(10 * 60 * 1000);
-            logDebug("FULL_WAKE_LOCK reacquired in onResume");
-        }
-        if (partialWakeLock == null || !partialWakeLock.isHeld()) {
-            partialWakeLock = powerManager.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, TAG + "_Partial");
-            partialWakeLock.acquire(10 * 60 * 1000);
-            logDebug("PARTIAL_WAKE_LOCK reacquired in onResume");
-        }
+        // Keep the alarm's wake lock while ringing; the window flags keep the screen on
+        AlarmWakeLocks.acquire(this, alarmId, AlarmWakeLocks.HOLDER_ACTIVITY, WAKE_LOCK_TIMEOUT_MS);
         // Restart alarm effects if needed
-        if (mediaPlayer == null) {
+        if (mediaPlayer == null && tonePlayer == null) {
             startAlarmSound();
         }
         if (vibrator == null) {
@@ -94,14 +85,17 @@ public class FullscreenAlarmActivity extends Activity {
     private static final String TAG = "MySched";
     private static final String LOG_SCOPE = "AlarmActivity";
 
-    private PowerManager.WakeLock wakeLock;
-    private PowerManager.WakeLock partialWakeLock;
+    private static final long WAKE_LOCK_TIMEOUT_MS = 10 * 60 * 1000;
+    private static final long AUTO_DISMISS_MS = 2 * 60 * 1000;
+    private int alarmId;
     private MediaPlayer mediaPlayer;
+    private AlarmTonePlayer tonePlayer;
     private Vibrator vibrator;
     private Handler handler;
-    private Handler clockHandler;
+    private AlarmScreenTicker ticker;
+    private long autoDismissAtElapsed;
+    private java.text.SimpleDateFormat dateFormat;
     private Runnable stopAlarmRunnable;
-    private Runnable timeTickRunnable;
 
     private String title;
     private String body;
@@ -127,40 +121,29 @@ public class FullscreenAlarmActivity extends Activity {
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
+        createdAtNanos = SystemClock.elapsedRealtimeNanos();
         applyThemeForMode();
         super.onCreate(savedInstanceState);
         logDebug("FullscreenAlarmActivity onCreate launched");
-        // Aggressively acquire wake locks at start
-        PowerManager powerManager = (PowerManager) getSystemService(Context.POWER_SERVICE);
-        if (wakeLock == null || !wakeLock.isHeld()) {
-            wakeLock = powerManager.newWakeLock(
-                PowerManager.FULL_WAKE_LOCK |
-                PowerManager.ACQUIRE_CAUSES_WAKEUP |
-                PowerManager.ON_AFTER_RELEASE, TAG);
-            wakeLock.acquire(10 * 60 * 1000);
-            logDebug("FULL_WAKE_LOCK acquired in onCreate");
-        }
-        if (partialWakeLock == null || !partialWakeLock.isHeld()) {
-            partialWakeLock = powerManager.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, TAG + "_Partial");
-            partialWakeLock.acquire(10 * 60 * 1000);
-            logDebug("PARTIAL_WAKE_LOCK acquired in onCreate");
-        }
-
         // Get extras from intent
         Intent intent = getIntent();
-        title = intent.getStringExtra("title");
-        body = intent.getStringExtra("body");
-        requestCode = intent.getIntExtra("requestCode", 0);
-        classId = intent.getIntExtra("classId", -1);
-        occurrenceKey = intent.getStringExtra("occurrenceKey");
-        if (occurrenceKey == null) {
-            occurrenceKey = "";
-        }
+        payload = AlarmPayload.from(intent);
+        // Take over the alarm's wake lock from the receiver and service
+        alarmId = payload.getRequestCode();
+        AlarmWakeLocks.handOff(this, alarmId, AlarmWakeLocks.HOLDER_ACTIVITY, WAKE_LOCK_TIMEOUT_MS);
+        logDebug("Wake lock handed off to activity");
+        AlarmForegroundService.onAlarmPresented(alarmId);
+        title = payload.getTitle();
+        body = payload.getBody();
+        requestCode = payload.getRequestCode();
+        classId = payload.getClassId();
+        occurrenceKey = payload.getOccurrenceKey();
         // Get class info for UI
-        subject = intent.getStringExtra("subject");
-        room = intent.getStringExtra("room");
-        startTime = intent.getStringExtra("startTime");
-        endTime = intent.getStringExtra("endTime");
+        subject = payload.getSubject();
+        room = payload.getRoom();
+        startTime = payload.getStartTime();
+        endTime = payload.getEndTime();
+        scheduledElapsed = intent.getLongExtra(AlarmLatency.EXTRA_SCHEDULED_ELAPSED, 0L);
 
 
 
@@ -188,18 +171,54 @@ public class FullscreenAlarmActivity extends Activity {
         if (root != null) {
             root.setBackgroundResource(R.drawable.fullscreen_alarm_background);
         }
+        autoDismissAtElapsed = SystemClock.elapsedRealtime() + AUTO_DISMISS_MS;
         initializeUI();
+        logFirstFrame();
 
         // Auto-dismiss after 2 minutes as fallback
         handler = new Handler(Looper.getMainLooper());
         stopAlarmRunnable = this::dismissAlarm;
-        handler.postDelayed(stopAlarmRunnable, 2 * 60 * 1000); // 2 minutes
+        handler.postDelayed(stopAlarmRunnable, AUTO_DISMISS_MS);
 
         // Debug: Log resolved color
         int surfaceColor = getResources().getColor(R.color.alarm_surface, getTheme());
         logInfo("Resolved alarm_surface color: " + Integer.toHexString(surfaceColor));
     }
 
+    /** Logs time from onCreate to the first drawn frame of the alarm screen. */
+    private void logFirstFrame() {
+        final View decor = getWindow().getDecorView();
+        decor.getViewTreeObserver().addOnDrawListener(new ViewTreeObserver.OnDrawListener() {
+            private boolean logged;
+
+            @Override
+            public void onDraw() {
+                if (logged) return;
+                logged = true;
+                long elapsedMs = (SystemClock.elapsedRealtimeNanos() - createdAtNanos) / 1_000_000;
+                logInfo("First frame " + elapsedMs + "ms after onCreate");
+                // Listeners cannot be removed from inside onDraw.
+                decor.post(() -> decor.getViewTreeObserver().removeOnDrawListener(this));
+            }
+        });
+    }
+
+    @Override
+    public void onWindowFocusChanged(boolean hasFocus) {
+        super.onWindowFocusChanged(hasFocus);
+        // First focus means the alarm is on screen; sound starts in onCreate.
+        if (hasFocus && !deliveryRecorded && scheduledElapsed > 0L
+                && isSoundPlaying()) {
+            deliveryRecorded = true;
+            AlarmLatency.record(this, AlarmLatency.STAGE_ACTIVITY, scheduledElapsed);
+        }
+    }
+
+    private boolean isSoundPlaying() {
+        if (tonePlayer != null) return tonePlayer.isPlaying();
+        return mediaPlayer != null && mediaPlayer.isPlaying();
+    }
+
     private void setupFullscreenWindow() {
         Window window = getWindow();
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O_MR1) {
@@ -279,7 +298,7 @@ public class FullscreenAlarmActivity extends Activity {
 
     private Integer resolvePreferredNightMode(Context ctx) {
         try {
-            SharedPreferences prefs = ctx.getSharedPreferences("FlutterSharedPreferences", MODE_PRIVATE);
+            SharedPreferences prefs = DirectBoot.settings(ctx);
             String pref = prefs.getString("flutter.ui_theme_mode", null);
             if ("light".equals(pref)) {
                 return Configuration.UI_MODE_NIGHT_NO;
@@ -296,8 +315,8 @@ public class FullscreenAlarmActivity extends Activity {
 
     private String readThemePreference() {
         try {
-            SharedPreferences prefs = getApplicationContext()
-                .getSharedPreferences("FlutterSharedPreferences", MODE_PRIVATE);
+            // Live Flutter prefs, or their device-protected mirror before unlock
+            SharedPreferences prefs = DirectBoot.settings(this);
             // Flutter's shared_preferences prefixes keys with "flutter."
             return prefs.getString("flutter.ui_theme_mode", null);
         } catch (Exception e) {
@@ -326,44 +345,43 @@ public class FullscreenAlarmActivity extends Activity {
         Button remindersButton = findViewById(R.id.view_reminders_button);
 
         // Apply SF Pro Rounded fonts
+        long fontsStarted = SystemClock.elapsedRealtimeNanos();
+        boolean fontsWarm = TypefaceHelper.alarmFontsReady();
+        Typeface bold = TypefaceHelper.getSFProRounded(this, TypefaceHelper.FontWeight.BOLD);
+        Typeface medium = TypefaceHelper.getSFProRounded(this, TypefaceHelper.FontWeight.MEDIUM);
+        logDebug("Fonts ready in " + (SystemClock.elapsedRealtimeNanos() - fontsStarted) / 1_000_000
+            + "ms (preloaded=" + fontsWarm + ")");
         if (alarmLabelView != null) {
-            alarmLabelView.setTypeface(TypefaceHelper.getSFProRounded(this, TypefaceHelper.FontWeight.BOLD));
+            alarmLabelView.setTypeface(bold);
         }
 
         if (timeView != null) {
-            timeView.setTypeface(TypefaceHelper.getSFProRounded(this, TypefaceHelper.FontWeight.BOLD));
+            timeView.setTypeface(bold);
         }
         if (countdownView != null) {
-            countdownView.setTypeface(TypefaceHelper.getSFProRounded(this, TypefaceHelper.FontWeight.BOLD));
+            countdownView.setTypeface(bold);
         }
         if (dateView != null) {
-            dateView.setTypeface(TypefaceHelper.getSFProRounded(this, TypefaceHelper.FontWeight.MEDIUM));
+            dateView.setTypeface(medium);
         }
         if (nextClassView != null) {
-            nextClassView.setTypeface(TypefaceHelper.getSFProRounded(this, TypefaceHelper.FontWeight.BOLD));
+            nextClassView.setTypeface(bold);
         }
 
         if (stopButton != null) {
-            stopButton.setTypeface(TypefaceHelper.getSFProRounded(this, TypefaceHelper.FontWeight.BOLD));
+            stopButton.setTypeface(bold);
         }
         if (snoozeButton != null) {
-            snoozeButton.setTypeface(TypefaceHelper.getSFProRounded(this, TypefaceHelper.FontWeight.BOLD));
+            snoozeButton.setTypeface(bold);
         }
         if (remindersButton != null) {
-            remindersButton.setTypeface(TypefaceHelper.getSFProRounded(this, TypefaceHelper.FontWeight.BOLD));
-        }
-
-        // Set ringing time (current time when alarm fired)
-
-
-        // Set current time in large font (update every second)
-        if (timeView != null) {
-            updateTimeView(timeView);
+            remindersButton.setTypeface(bold);
         }
 
-        // Set countdown timer (2 minutes auto-dismiss)
-        if (countdownView != null) {
-            startCountdownTimer(countdownView);
+        // Current time and the auto-dismiss countdown share one ticker,
+        // started and stopped with visibility
+        if (timeView != null || countdownView != null) {
+            ticker = new AlarmScreenTicker(timeView, countdownView, autoDismissAtElapsed);
         }
 
         // Set date
@@ -372,9 +390,7 @@ public class FullscreenAlarmActivity extends Activity {
             if (!dateLabel.isEmpty()) {
                 dateView.setText(dateLabel);
             } else {
-                java.text.SimpleDateFormat fmt = 
-                    new java.text.SimpleDateFormat("EEE, MMM d", Locale.getDefault());
-                dateView.setText(fmt.format(new java.util.Date()));
+                dateView.setText(dateFormat().format(new java.util.Date()));
             }
         }
 
@@ -416,27 +432,6 @@ public class FullscreenAlarmActivity extends Activity {
         return "";
     }
 
-    private void startCountdownTimer(TextView countdownView) {
-        final long endTime = System.currentTimeMillis() + (2 * 60 * 1000); // 2 minutes
-        final Handler countdownHandler = new Handler(Looper.getMainLooper());
-        final Runnable countdownRunnable = new Runnable() {
-            @Override
-            public void run() {
-                long remaining = endTime - System.currentTimeMillis();
-                if (remaining > 0) {
-                    int minutes = (int) (remaining / 60000);
-                    int seconds = (int) ((remaining % 60000) / 1000);
-                    countdownView.setText(String.format(Locale.getDefault(), 
-                        "Alarm stops in %02d:%02d", minutes, seconds));
-                    countdownHandler.postDelayed(this, 1000);
-                } else {
-                    countdownView.setText("Alarm stopping...");
-                }
-            }
-        };
-        countdownHandler.post(countdownRunnable);
-    }
-
     private void openDashboardFromAlarm() {
         try {
             Intent intent = new Intent(this, MainActivity.class);
@@ -487,9 +482,14 @@ public class FullscreenAlarmActivity extends Activity {
     private String buildDateLabel() {
         java.util.Date date = parseOccurrenceDate();
         if (date == null) return "";
-        java.text.SimpleDateFormat fmt =
-            new java.text.SimpleDateFormat("EEE, MMM d", Locale.getDefault());
-        return fmt.format(date);
+        return dateFormat().format(date);
+    }
+
+    private java.text.SimpleDateFormat dateFormat() {
+        if (dateFormat == null) {
+            dateFormat = new java.text.SimpleDateFormat("EEE, MMM d", Locale.getDefault());
+        }
+        return dateFormat;
     }
 
     private String buildSubtitleLabel() {
@@ -515,10 +515,12 @@ public class FullscreenAlarmActivity extends Activity {
         String trimmed = occurrenceKey.trim();
         if (trimmed.length() != 8) return null;
         try {
-            java.text.SimpleDateFormat parser =
-                new java.text.SimpleDateFormat("yyyyMMdd", Locale.US);
-            parser.setLenient(false);
-            return parser.parse(trimmed);
+            int value = Integer.parseInt(trimmed);
+            java.util.Calendar calendar = java.util.Calendar.getInstance();
+            calendar.setLenient(false);
+            calendar.clear();
+            calendar.set(value / 10000, value / 100 % 100 - 1, value % 100);
+            return calendar.getTime();
         } catch (Exception ignored) {
             return null;
         }
@@ -548,38 +550,7 @@ public class FullscreenAlarmActivity extends Activity {
         android.util.Log.e(TAG, "[" + LOG_SCOPE + "] " + message, t);
     }
 
-    private void updateTimeView(TextView timeView) {
-        if (clockHandler == null) {
-            clockHandler = new Handler(Looper.getMainLooper());
-        }
-        timeTickRunnable = new Runnable() {
-            @Override
-            public void run() {
-                java.text.SimpleDateFormat sdf =
-                    new java.text.SimpleDateFormat("h:mm", java.util.Locale.getDefault());
-                String time = sdf.format(new java.util.Date());
-                timeView.setText(time);
-                if (clockHandler != null) {
-                    clockHandler.postDelayed(this, 1000);
-                }
-            }
-        };
-        clockHandler.post(timeTickRunnable);
-    }
-
     private void startAlarmEffects() {
-        // Acquire both FULL and PARTIAL wake locks for maximum reliability
-        PowerManager powerManager = (PowerManager) getSystemService(Context.POWER_SERVICE);
-        wakeLock = powerManager.newWakeLock(
-            PowerManager.FULL_WAKE_LOCK |
-            PowerManager.ACQUIRE_CAUSES_WAKEUP |
-            PowerManager.ON_AFTER_RELEASE, TAG);
-        wakeLock.acquire(10 * 60 * 1000); // 10 minutes
-        logDebug("FULL_WAKE_LOCK acquired");
-        partialWakeLock = powerManager.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, TAG + "_Partial");
-        partialWakeLock.acquire(10 * 60 * 1000);
-        logDebug("PARTIAL_WAKE_LOCK acquired");
-
         // Start alarm sound
         startAlarmSound();
 
@@ -588,14 +559,35 @@ public class FullscreenAlarmActivity extends Activity {
     }
 
     private void startAlarmSound() {
+        // Read settings from SharedPreferences
+        SharedPreferences prefs = DirectBoot.settings(this);
+        // Flutter stores ints as Longs in SharedPreferences
+        int volumePercent = (int) prefs.getLong("flutter.alarm_volume", 80L); 
+        String ringtone = prefs.getString("flutter.alarm_ringtone", "default"); // Default ringtone
+
+        // Pre-decoded tone: no prepare() on this thread, audible within a buffer.
+        AlarmToneCache.Tone tone = AlarmToneCache.toneFor(this, ringtone);
+        if (tone != null) {
+            try {
+                tonePlayer = new AlarmTonePlayer(tone, volumePercent / 100.0f, () -> runOnUiThread(() -> {
+                    if (tonePlayer == null || tonePlayer.isPlaying() || isFinishing()) return;
+                    tonePlayer = null;
+                    startMediaPlayerSound(volumePercent, ringtone);
+                }));
+                tonePlayer.start();
+                applyAlarmStreamVolume(volumePercent);
+                logDebug("Alarm tone started from pre-decoded cache");
+                return;
+            } catch (Exception e) {
+                logError("Pre-decoded tone failed, using MediaPlayer", e);
+                tonePlayer = null;
+            }
+        }
+        startMediaPlayerSound(volumePercent, ringtone);
+    }
+
+    private void startMediaPlayerSound(int volumePercent, String ringtone) {
         try {
-            // Read settings from SharedPreferences
-            // Read settings from SharedPreferences
-            SharedPreferences prefs = getSharedPreferences("FlutterSharedPreferences", Context.MODE_PRIVATE);
-            // Flutter stores ints as Longs in SharedPreferences
-            int volumePercent = (int) prefs.getLong("flutter.alarm_volume", 80L); 
-            String ringtone = prefs.getString("flutter.alarm_ringtone", "default"); // Default ringtone
-            
             // Get ringtone URI based on setting
             Uri alarmUri = getRingtoneUri(ringtone);
             
@@ -616,15 +608,7 @@ public class FullscreenAlarmActivity extends Activity {
             
             mediaPlayer.start();
 
-            // Set system alarm stream volume based on percentage
-            AudioManager audioManager = (AudioManager) getSystemService(Context.AUDIO_SERVICE);
-            int maxVolume = audioManager.getStreamMaxVolume(AudioManager.STREAM_ALARM);
-            int targetVolume = Math.round((volumePercent / 100.0f) * maxVolume);
-            audioManager.setStreamVolume(
-                AudioManager.STREAM_ALARM,
-                targetVolume,
-                0
-            );
+            applyAlarmStreamVolume(volumePercent);
 
             logDebug("Alarm sound started successfully");
             logDebug("URI: " + alarmUri.toString());
@@ -653,6 +637,18 @@ public class FullscreenAlarmActivity extends Activity {
         }
     }
     
+    private void applyAlarmStreamVolume(int volumePercent) {
+        // Set system alarm stream volume based on percentage
+        AudioManager audioManager = (AudioManager) getSystemService(Context.AUDIO_SERVICE);
+        int maxVolume = audioManager.getStreamMaxVolume(AudioManager.STREAM_ALARM);
+        int targetVolume = Math.round((volumePercent / 100.0f) * maxVolume);
+        audioManager.setStreamVolume(
+            AudioManager.STREAM_ALARM,
+            targetVolume,
+            0
+        );
+    }
+
     private Uri getRingtoneUri(String ringtoneUriString) {
         // Use stored URI directly if it exists and is not "default"
         if (ringtoneUriString != null && !ringtoneUriString.equals("default") && !ringtoneUriString.isEmpty()) {
@@ -676,7 +672,7 @@ public class FullscreenAlarmActivity extends Activity {
 
     private void startVibration() {
         // Read vibration setting from SharedPreferences
-        SharedPreferences prefs = getSharedPreferences("FlutterSharedPreferences", Context.MODE_PRIVATE);
+        SharedPreferences prefs = DirectBoot.settings(this);
         boolean vibrationEnabled = prefs.getBoolean("flutter.alarm_vibration", true); // Default true
         
         if (!vibrationEnabled) {
@@ -726,23 +722,22 @@ public class FullscreenAlarmActivity extends Activity {
         } else {
             AlarmStore.clearOccurrenceAck(this, classId, occurrenceKey);
         }
-        if (classId != -1) {
-            AlarmStore.removeClassScheduleId(this, classId, requestCode);
-        }
         AlarmStore.forgetAlarmId(this, requestCode);
-        AlarmStore.removeNativeId(this, requestCode);
         // Cancel auto-dismiss
         if (handler != null && stopAlarmRunnable != null) {
             handler.removeCallbacks(stopAlarmRunnable);
         }
-        if (clockHandler != null && timeTickRunnable != null) {
-            clockHandler.removeCallbacks(timeTickRunnable);
+        if (ticker != null) {
+            ticker.stop();
         }
         stopAlarmRunnable = null;
         handler = null;
-        timeTickRunnable = null;
-        clockHandler = null;
+        ticker = null;
         // Stop sound
+        if (tonePlayer != null) {
+            tonePlayer.stop();
+            tonePlayer = null;
+        }
         if (mediaPlayer != null) {
             mediaPlayer.stop();
             mediaPlayer.release();
@@ -754,14 +749,7 @@ public class FullscreenAlarmActivity extends Activity {
             vibrator = null;
         }
         // Release wake locks
-        if (wakeLock != null && wakeLock.isHeld()) {
-            wakeLock.release();
-            wakeLock = null;
-        }
-        if (partialWakeLock != null && partialWakeLock.isHeld()) {
-            partialWakeLock.release();
-            partialWakeLock = null;
-        }
+        AlarmWakeLocks.release(this, alarmId, AlarmWakeLocks.HOLDER_ACTIVITY);
         // Dismiss notification if any
         NotificationManagerCompat.from(this).cancel(requestCode);
     }
@@ -779,77 +767,28 @@ public class FullscreenAlarmActivity extends Activity {
     }
 
     private void scheduleSnoozedAlarm(long triggerAt, int newRequestCode, String newOccurrenceKey) {
-        AlarmManager alarmManager = (AlarmManager) getSystemService(Context.ALARM_SERVICE);
-        if (alarmManager == null) return;
-
-        Intent broadcastIntent = new Intent(this, AlarmReceiver.class);
-        broadcastIntent.putExtra("title", title);
-        broadcastIntent.putExtra("body", body);
-        broadcastIntent.putExtra("requestCode", newRequestCode);
-        broadcastIntent.putExtra("classId", classId);
-        broadcastIntent.putExtra("occurrenceKey", newOccurrenceKey);
-        if (subject != null) {
-            broadcastIntent.putExtra("subject", subject);
-        }
-        if (room != null) {
-            broadcastIntent.putExtra("room", room);
-        }
-        if (startTime != null) {
-            broadcastIntent.putExtra("startTime", startTime);
-        }
-        if (endTime != null) {
-            broadcastIntent.putExtra("endTime", endTime);
-        }
-        PendingIntent broadcastPi = PendingIntent.getBroadcast(
-            this,
-            newRequestCode,
-            broadcastIntent,
-            PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE
-        );
-        AlarmManager.AlarmClockInfo info =
-            new AlarmManager.AlarmClockInfo(triggerAt, broadcastPi);
-        alarmManager.setAlarmClock(info, broadcastPi);
-        AlarmStore.rememberAlarmId(this, newRequestCode);
-        if (classId != -1) {
-            AlarmStore.addClassScheduleId(this, classId, newRequestCode);
-        }
-        AlarmStore.addNativeId(this, newRequestCode);
+        payload = payload.reschedule(newRequestCode, triggerAt, newOccurrenceKey);
+        AlarmDispatcher.setAlarmClock(this, payload);
+        // Persist the payload too, or a reboot cannot restore the snooze.
+        AlarmStore.trackArmed(this, Collections.singletonList(payload.toSpec()));
         this.requestCode = newRequestCode;
         this.occurrenceKey = newOccurrenceKey;
     }
 
     private int buildSnoozeRequestCode(int classIdValue, long triggerAt) {
-        long hash = 17L;
-        hash = hash * 31L + classIdValue;
-        hash = hash * 31L + (triggerAt & 0x7fffffffL);
-        return (int) (Math.abs(hash) & 0x7fffffff);
+        return AlarmIds.snoozeRequestCode(classIdValue, triggerAt);
     }
 
     private String buildOccurrenceKey(long millis) {
-        Calendar cal = Calendar.getInstance();
-        cal.setTimeInMillis(millis);
-        int year = cal.get(Calendar.YEAR);
-        int month = cal.get(Calendar.MONTH) + 1;
-        int day = cal.get(Calendar.DAY_OF_MONTH);
-        return String.format(Locale.US, "%04d%02d%02d", year, month, day);
+        return AlarmIds.occurrenceKey(millis);
     }
 
     private void showSnoozeFeedback(int minutes) {
-        String channelId = "mysched_snooze_feedback";
+        String channelId = NotificationChannelRegistry.SNOOZE_FEEDBACK;
         NotificationManager nm =
             (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
         if (nm == null) return;
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O &&
-            nm.getNotificationChannel(channelId) == null) {
-            NotificationChannel channel = new NotificationChannel(
-                channelId,
-                "Snooze Feedback",
-                NotificationManager.IMPORTANCE_LOW
-            );
-            channel.setDescription("Confirms when reminders are snoozed");
-            channel.enableVibration(false);
-            nm.createNotificationChannel(channel);
-        }
+        NotificationChannelRegistry.ensure(this);
         String text = minutes == 1
             ? "Reminder snoozed for 1 minute"
             : "Reminder snoozed for " + minutes + " minutes";
@@ -885,16 +824,8 @@ public class FullscreenAlarmActivity extends Activity {
 
         NotificationManager nm =
             (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
-        String channelId = "mysched_heads_up";
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O
-            && nm.getNotificationChannel(channelId) == null) {
-            NotificationChannel channel =
-                new NotificationChannel(channelId, "Upcoming Class Alerts", NotificationManager.IMPORTANCE_HIGH);
-            channel.setDescription("Heads-up notifications before class alarms fire");
-            channel.enableVibration(true);
-            channel.setLockscreenVisibility(NotificationCompat.VISIBILITY_PUBLIC);
-            nm.createNotificationChannel(channel);
-        }
+        String channelId = NotificationChannelRegistry.HEADS_UP;
+        NotificationChannelRegistry.ensure(this);
 
         Intent openIntent = new Intent(this, MainActivity.class);
         openIntent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TOP);
@@ -945,9 +876,28 @@ public class FullscreenAlarmActivity extends Activity {
         return builder.toString();
     }
 
+    @Override
+    protected void onStart() {
+        super.onStart();
+        if (ticker != null) {
+            ticker.start();
+        }
+    }
+
+    @Override
+    protected void onStop() {
+        if (ticker != null) {
+            ticker.stop();
+        }
+        super.onStop();
+    }
+
     @Override
     protected void onDestroy() {
         stopAlarm();
+        AlarmStore.flushAsync(this);
+        // Let the service present the next queued alarm, if any
+        AlarmForegroundService.onAlarmClosed(alarmId);
         super.onDestroy();
     }
 
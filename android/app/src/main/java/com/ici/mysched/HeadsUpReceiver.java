@@ -1,27 +1,23 @@
 package com.ici.mysched;
 
-import android.app.NotificationChannel;
-import android.app.NotificationManager;
 import android.app.PendingIntent;
 import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
-import android.content.SharedPreferences;
-import android.os.Build;
-import java.util.HashSet;
 import androidx.core.app.NotificationCompat;
 import androidx.core.app.NotificationManagerCompat;
 
 public class HeadsUpReceiver extends BroadcastReceiver {
 	@Override
 	public void onReceive(Context context, Intent intent) {
-		String title = intent.getStringExtra("title");
-		String body = intent.getStringExtra("body");
-		int requestCode = intent.getIntExtra("requestCode", 0);
-		String subject = intent.getStringExtra("subject");
-		String room = intent.getStringExtra("room");
-		String startTime = intent.getStringExtra("startTime");
-		String endTime = intent.getStringExtra("endTime");
+		AlarmPayload payload = AlarmPayload.from(intent);
+		String title = payload.getTitle();
+		String body = payload.getBody();
+		int requestCode = payload.getRequestCode();
+		String subject = payload.getSubject();
+		String room = payload.getRoom();
+		String startTime = payload.getStartTime();
+		String endTime = payload.getEndTime();
 
 		String displayTitle =
 			(subject != null && !subject.isEmpty())
@@ -29,18 +25,8 @@ public class HeadsUpReceiver extends BroadcastReceiver {
 				: (title != null && !title.isEmpty() ? title : "Upcoming class");
 		String displayBody = buildBody(body, room, startTime, endTime);
 
-		NotificationManager nm =
-			(NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
-		String channelId = "mysched_heads_up";
-		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O
-			&& nm.getNotificationChannel(channelId) == null) {
-			NotificationChannel channel =
-				new NotificationChannel(channelId, "Upcoming Class Alerts", NotificationManager.IMPORTANCE_HIGH);
-			channel.setDescription("Heads-up notifications before class alarms fire");
-			channel.enableVibration(true);
-			channel.setLockscreenVisibility(NotificationCompat.VISIBILITY_PUBLIC);
-			nm.createNotificationChannel(channel);
-		}
+		String channelId = NotificationChannelRegistry.HEADS_UP;
+		NotificationChannelRegistry.ensure(context);
 
 		Intent openIntent = new Intent(context, MainActivity.class);
 		openIntent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TOP);
@@ -66,7 +52,15 @@ public class HeadsUpReceiver extends BroadcastReceiver {
 			.setContentIntent(contentIntent);
 
 		NotificationManagerCompat.from(context).notify(requestCode, builder.build());
-		forgetScheduledId(context, requestCode);
+		if (payload.getChainAtMillis() > 0L) {
+			// Chained heads-up: the full-screen alarm is armed only now.
+			AlarmScheduler.continueChain(context, payload);
+		} else {
+			forgetScheduledId(context, requestCode);
+		}
+		// Persist the registry off the main thread before the process may be reclaimed.
+		PendingResult pending = goAsync();
+		AlarmStore.flushAsync(context, pending::finish);
 	}
 
 	private String buildBody(String body, String room, String startTime, String endTime) {
@@ -106,15 +100,6 @@ public class HeadsUpReceiver extends BroadcastReceiver {
 	}
 
 	private void forgetScheduledId(Context context, int id) {
-		android.content.SharedPreferences sp = context.getSharedPreferences(
-			"com.example.mysched.alarms",
-			Context.MODE_PRIVATE
-		);
-		java.util.Set<String> set = sp.getStringSet("ids", null);
-		if (set == null || set.isEmpty()) return;
-		java.util.Set<String> updated = new java.util.HashSet<>(set);
-		if (updated.remove(Integer.toString(id))) {
-			sp.edit().putStringSet("ids", updated).apply();
-		}
+		AlarmStore.forgetAlarmId(context, id);
 	}
 }
@@ -2,29 +2,87 @@ package com.ici.mysched;
 
 import android.content.Context;
 import android.graphics.Typeface;
+import android.os.SystemClock;
 import android.util.Log;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
 
+/**
+ * Thread-safe typeface cache.
+ *
+ * Each font is parsed at most once per process: the first caller (or the
+ * preload thread) runs the load and everyone else waits on the same task.
+ * {@link #preloadAlarmFonts} is called from {@link AlarmReceiver} so the
+ * alarm screen finds its weights already parsed.
+ */
 public class TypefaceHelper {
     private static final String TAG = "MySched";
-    private static final Map<String, Typeface> cache = new HashMap<>();
+    private static final ConcurrentHashMap<String, FutureTask<Typeface>> cache = new ConcurrentHashMap<>();
+    private static final ExecutorService preloader = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "TypefacePreload");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /** Weights used by {@link FullscreenAlarmActivity}. */
+    private static final FontWeight[] ALARM_WEIGHTS = { FontWeight.BOLD, FontWeight.MEDIUM };
 
     public static Typeface get(Context context, String fontName) {
-        if (cache.containsKey(fontName)) {
-            Log.d(TAG, "[TypefaceHelper] Font retrieved from cache: " + fontName);
-            return cache.get(fontName);
+        FutureTask<Typeface> task = cache.get(fontName);
+        if (task == null) {
+            Context appContext = context.getApplicationContext() != null
+                ? context.getApplicationContext() : context;
+            FutureTask<Typeface> created = new FutureTask<>(() -> load(appContext, fontName));
+            task = cache.putIfAbsent(fontName, created);
+            if (task == null) {
+                task = created;
+                task.run();
+            }
+        }
+        try {
+            Typeface typeface = task.get();
+            return typeface != null ? typeface : Typeface.DEFAULT;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Typeface.DEFAULT;
+        } catch (ExecutionException e) {
+            return Typeface.DEFAULT;
+        }
+    }
+
+    /** Parses the alarm screen's weights on a background thread. */
+    public static void preloadAlarmFonts(Context context) {
+        final Context appContext = context.getApplicationContext() != null
+            ? context.getApplicationContext() : context;
+        for (FontWeight weight : ALARM_WEIGHTS) {
+            String fontFile = fileFor(weight);
+            if (cache.containsKey(fontFile)) continue;
+            preloader.execute(() -> get(appContext, fontFile));
         }
-        
+    }
+
+    /** Whether every alarm screen weight has finished loading. */
+    public static boolean alarmFontsReady() {
+        for (FontWeight weight : ALARM_WEIGHTS) {
+            FutureTask<Typeface> task = cache.get(fileFor(weight));
+            if (task == null || !task.isDone()) return false;
+        }
+        return true;
+    }
+
+    private static Typeface load(Context context, String fontName) {
+        long started = SystemClock.elapsedRealtimeNanos();
         try {
             String fontPath = "fonts/" + fontName;
-            Log.d(TAG, "[TypefaceHelper] Attempting to load font: " + fontPath);
             Typeface typeface = Typeface.createFromAsset(
                 context.getAssets(), 
                 fontPath
             );
-            cache.put(fontName, typeface);
-            Log.d(TAG, "[TypefaceHelper] Successfully loaded font: " + fontName);
+            Log.d(TAG, "[TypefaceHelper] Loaded font " + fontName + " in "
+                + (SystemClock.elapsedRealtimeNanos() - started) / 1_000_000 + "ms");
             return typeface;
         } catch (Exception e) {
             Log.e(TAG, "[TypefaceHelper] Failed to load font: " + fontName, e);
@@ -34,36 +92,31 @@ public class TypefaceHelper {
 
     public static Typeface getSFProRounded(Context context, FontWeight weight) {
         try {
-            String fontFile;
-            switch (weight) {
-                case BLACK:
-                    fontFile = "SF-Pro-Rounded-Black.otf";
-                    break;
-                case HEAVY:
-                    fontFile = "SF-Pro-Rounded-Heavy.otf";
-                    break;
-                case BOLD:
-                    fontFile = "SF-Pro-Rounded-Bold.otf";
-                    break;
-                case SEMIBOLD:
-                    fontFile = "SF-Pro-Rounded-Semibold.otf";
-                    break;
-                case MEDIUM:
-                    fontFile = "SF-Pro-Rounded-Medium.otf";
-                    break;
-                case REGULAR:
-                default:
-                    fontFile = "SF-Pro-Rounded-Regular.otf";
-                    break;
-            }
-            Typeface typeface = get(context, fontFile);
-            return typeface != null ? typeface : Typeface.DEFAULT;
+            return get(context, fileFor(weight));
         } catch (Exception e) {
             Log.e(TAG, "[TypefaceHelper] Error in getSFProRounded", e);
             return Typeface.DEFAULT;
         }
     }
 
+    private static String fileFor(FontWeight weight) {
+        switch (weight) {
+            case BLACK:
+                return "SF-Pro-Rounded-Black.otf";
+            case HEAVY:
+                return "SF-Pro-Rounded-Heavy.otf";
+            case BOLD:
+                return "SF-Pro-Rounded-Bold.otf";
+            case SEMIBOLD:
+                return "SF-Pro-Rounded-Semibold.otf";
+            case MEDIUM:
+                return "SF-Pro-Rounded-Medium.otf";
+            case REGULAR:
+            default:
+                return "SF-Pro-Rounded-Regular.otf";
+        }
+    }
+
     public enum FontWeight {
         REGULAR,
         MEDIUM,
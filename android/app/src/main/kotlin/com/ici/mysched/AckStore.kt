@@ -0,0 +1,205 @@
+package com.ici.mysched
+
+import java.io.BufferedInputStream
+import java.io.BufferedOutputStream
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.File
+import java.io.FileInputStream
+import java.io.FileOutputStream
+import java.io.IOException
+import java.util.Calendar
+
+/**
+ * Occurrence acknowledgements keyed by (classId, yyyymmdd).
+ *
+ * Each ack is packed into one long (`classId << 32 | yyyymmdd`) and held
+ * in a hash set, so lookups are O(1) without touching prefs or JSON.
+ * Occurrences older than [retentionDays] are dropped on load and at most
+ * once per day afterwards, which keeps the file bounded to a few weeks of
+ * acks. Changes only update memory; [flush] rewrites the whole file, and
+ * AlarmStore calls it from its coalesced commit thread.
+ */
+class AckStore(
+    private val file: File,
+    private val retentionDays: Int = DEFAULT_RETENTION_DAYS,
+    private val today: () -> Int = ::todayKey,
+) {
+    private val acks = HashSet<Long>()
+    private val writeLock = Any()
+    private var loaded = false
+    private var dirty = false
+    private var prunedFor = 0
+
+    /** True when the backing file did not exist on first load. */
+    var createdFresh: Boolean = false
+        private set
+
+    @Synchronized
+    fun contains(classId: Int, occurrenceKey: String): Boolean {
+        val packed = pack(classId, occurrenceKey) ?: return false
+        ensureLoaded()
+        return acks.contains(packed)
+    }
+
+    @Synchronized
+    fun size(): Int {
+        ensureLoaded()
+        return acks.size
+    }
+
+    /** Sets or clears one ack. Returns false when nothing changed. */
+    @Synchronized
+    fun set(classId: Int, occurrenceKey: String, acknowledged: Boolean): Boolean {
+        val packed = pack(classId, occurrenceKey) ?: return false
+        ensureLoaded()
+        if (acknowledged && packed.toInt() < cutoff()) return false
+        val changed = if (acknowledged) acks.add(packed) else acks.remove(packed)
+        val pruned = pruneIfDue()
+        if (changed || pruned) dirty = true
+        return changed
+    }
+
+    /** Adds every (classId, occurrenceKey) pair. */
+    @Synchronized
+    fun addAll(occurrences: Collection<Pair<Int, String>>): Int {
+        ensureLoaded()
+        val cutoff = cutoff()
+        var added = 0
+        for ((classId, key) in occurrences) {
+            val packed = pack(classId, key) ?: continue
+            if (packed.toInt() < cutoff) continue
+            if (acks.add(packed)) added++
+        }
+        if (added > 0) dirty = true
+        return added
+    }
+
+    /** Clears every (classId, occurrenceKey) pair. */
+    @Synchronized
+    fun removeAll(occurrences: Collection<Pair<Int, String>>): Int {
+        ensureLoaded()
+        var removed = 0
+        for ((classId, key) in occurrences) {
+            val packed = pack(classId, key) ?: continue
+            if (acks.remove(packed)) removed++
+        }
+        if (removed > 0) dirty = true
+        return removed
+    }
+
+    /**
+     * Writes the acks to disk if anything changed since the last flush.
+     * Lookups and changes are not blocked while the file is written.
+     */
+    fun flush() {
+        synchronized(writeLock) {
+            val snapshot = synchronized(this) {
+                if (!dirty) return
+                dirty = false
+                acks.toLongArray()
+            }
+            if (!writeSnapshot(snapshot)) {
+                synchronized(this) { dirty = true }
+            }
+        }
+    }
+
+    private fun cutoff(): Int {
+        val day = today()
+        val calendar = Calendar.getInstance().apply {
+            clear()
+            set(day / 10000, day / 100 % 100 - 1, day % 100)
+            add(Calendar.DAY_OF_MONTH, -retentionDays)
+        }
+        return calendar.get(Calendar.YEAR) * 10000 +
+            (calendar.get(Calendar.MONTH) + 1) * 100 +
+            calendar.get(Calendar.DAY_OF_MONTH)
+    }
+
+    private fun pruneIfDue(): Boolean {
+        val day = today()
+        if (prunedFor == day) return false
+        prunedFor = day
+        val cutoff = cutoff()
+        return acks.removeAll { it.toInt() < cutoff }
+    }
+
+    private fun ensureLoaded() {
+        if (loaded) return
+        loaded = true
+        if (!file.exists()) {
+            createdFresh = true
+            return
+        }
+        var rewrite = false
+        try {
+            DataInputStream(BufferedInputStream(FileInputStream(file))).use { input ->
+                if (input.readInt() != MAGIC || input.readByte() != VERSION) {
+                    throw IOException("Unrecognised ack store header")
+                }
+                val count = input.readInt()
+                repeat(count) { acks.add(input.readLong()) }
+            }
+        } catch (e: IOException) {
+            android.util.Log.w(TAG, "[AckStore] Discarding unreadable ack store", e)
+            acks.clear()
+            rewrite = true
+        }
+        if (pruneIfDue() || rewrite) dirty = true
+    }
+
+    private fun writeSnapshot(snapshot: LongArray): Boolean {
+        val parent = file.parentFile
+        if (parent != null && !parent.exists()) parent.mkdirs()
+        val tmp = File(file.path + ".tmp")
+        try {
+            FileOutputStream(tmp).use { stream ->
+                val out = DataOutputStream(BufferedOutputStream(stream))
+                out.writeInt(MAGIC)
+                out.writeByte(VERSION.toInt())
+                out.writeInt(snapshot.size)
+                for (packed in snapshot) {
+                    out.writeLong(packed)
+                }
+                out.flush()
+                stream.fd.sync()
+            }
+            if (!tmp.renameTo(file)) {
+                throw IOException("Failed to replace ${file.name}")
+            }
+            return true
+        } catch (e: IOException) {
+            android.util.Log.e(TAG, "[AckStore] Snapshot failed", e)
+            tmp.delete()
+            return false
+        }
+    }
+
+    companion object {
+        const val DEFAULT_RETENTION_DAYS = 14
+
+        private const val TAG = "MySched"
+        private const val MAGIC = 0x4D53414B // "MSAK"
+        private const val VERSION: Byte = 1
+
+        /** Packs a yyyymmdd occurrence key; null for keys in any other shape. */
+        @JvmStatic
+        fun pack(classId: Int, occurrenceKey: String): Long? {
+            if (classId == -1 || occurrenceKey.length != 8) return null
+            val day = occurrenceKey.toIntOrNull() ?: return null
+            val month = day / 100 % 100
+            val dayOfMonth = day % 100
+            if (month !in 1..12 || dayOfMonth !in 1..31) return null
+            return (classId.toLong() shl 32) or day.toLong()
+        }
+
+        @JvmStatic
+        fun todayKey(): Int {
+            val now = Calendar.getInstance()
+            return now.get(Calendar.YEAR) * 10000 +
+                (now.get(Calendar.MONTH) + 1) * 100 +
+                now.get(Calendar.DAY_OF_MONTH)
+        }
+    }
+}
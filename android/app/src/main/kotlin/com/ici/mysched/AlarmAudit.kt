@@ -0,0 +1,112 @@
+package com.ici.mysched
+
+import android.app.job.JobInfo
+import android.app.job.JobScheduler
+import android.content.ComponentName
+import android.content.Context
+import android.os.SystemClock
+import java.util.concurrent.TimeUnit
+
+/**
+ * Periodic consistency pass between the id stores and AlarmManager.
+ *
+ * Fired alarms are not always forgotten (the alarm screen may never open).
+ * The audit probes every registry id with `FLAG_NO_CREATE` and drops the
+ * ones nothing is armed for, or whose payload time has passed, from the
+ * registry and the payload store in one pass. Future payloads that lost
+ * their alarm are re-armed instead. The Dart side's per-user id lists are
+ * left alone: an engine may hold them in its prefs cache and write them
+ * back, and its next resync replaces them with what is actually armed.
+ */
+object AlarmAudit {
+    private const val TAG = "MySched"
+    private const val PREFS_NAME = "com.example.mysched.alarms"
+    private const val LAST_RUN_KEY = "audit_last_run"
+    private const val LAST_REMOVED_KEY = "audit_last_removed"
+    private const val TOTAL_REMOVED_KEY = "audit_total_removed"
+    private const val LAST_REARMED_KEY = "audit_last_rearmed"
+
+    const val JOB_ID = 0x4D53_0A01
+    private val PERIOD_MS = TimeUnit.HOURS.toMillis(24)
+
+    class Result(
+        val scanned: Int,
+        val removed: Int,
+        val rearmed: Int,
+        val elapsedMs: Double,
+    ) {
+        fun toMap(): Map<String, Any> = mapOf(
+            "scanned" to scanned,
+            "removed" to removed,
+            "rearmed" to rearmed,
+            "elapsedMs" to elapsedMs,
+        )
+    }
+
+    /**
+     * Schedules the idle-time audit job unless it is already pending.
+     * The job is persisted, so this only needs to succeed once per install.
+     */
+    @JvmStatic
+    fun ensureScheduled(context: Context) {
+        val appContext = context.applicationContext ?: context
+        val scheduler = appContext.getSystemService(Context.JOB_SCHEDULER_SERVICE) as? JobScheduler
+            ?: return
+        if (scheduler.allPendingJobs.any { it.id == JOB_ID }) return
+        val job = JobInfo.Builder(
+            JOB_ID,
+            ComponentName(appContext, AlarmAuditJobService::class.java)
+        )
+            .setRequiresDeviceIdle(true)
+            .setPeriodic(PERIOD_MS)
+            .setPersisted(true)
+            .build()
+        val outcome = scheduler.schedule(job)
+        android.util.Log.d(
+            TAG,
+            "[AlarmAudit] Scheduled audit job (ok=${outcome == JobScheduler.RESULT_SUCCESS})"
+        )
+    }
+
+    /** Runs one audit pass. Blocks on disk, so call it off the main thread. */
+    @JvmStatic
+    @JvmOverloads
+    @Synchronized
+    fun run(context: Context, now: Long = System.currentTimeMillis()): Result {
+        val started = SystemClock.elapsedRealtimeNanos()
+        val appContext = context.applicationContext ?: context
+
+        val pass = AlarmScheduler.rearmPayloads(appContext, now)
+        val payloadIds = AlarmStore.payloads(appContext).all().mapTo(HashSet()) { it.id }
+        val candidates = AlarmStore.getRememberedAlarmIds(appContext)
+
+        val stale = HashSet<Int>(pass.expired)
+        for (id in candidates) {
+            if (id in stale || id in payloadIds) continue
+            if (!AlarmScheduler.hasPendingIntent(appContext, id)) stale.add(id)
+        }
+
+        val removed = if (stale.isEmpty()) 0 else AlarmStore.forgetAll(appContext, stale)
+        AlarmStore.flush(appContext)
+
+        val elapsedMs = (SystemClock.elapsedRealtimeNanos() - started) / 1_000_000.0
+        recordRun(appContext, now, removed, pass.restored)
+        android.util.Log.i(
+            TAG,
+            "[AlarmAudit] Scanned ${candidates.size} ids, removed $removed entries, " +
+                "re-armed ${pass.restored} in " +
+                String.format(java.util.Locale.US, "%.1f", elapsedMs) + "ms"
+        )
+        return Result(candidates.size, removed, pass.restored, elapsedMs)
+    }
+
+    private fun recordRun(context: Context, now: Long, removed: Int, rearmed: Int) {
+        val prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)
+        prefs.edit()
+            .putLong(LAST_RUN_KEY, now)
+            .putInt(LAST_REMOVED_KEY, removed)
+            .putInt(LAST_REARMED_KEY, rearmed)
+            .putLong(TOTAL_REMOVED_KEY, prefs.getLong(TOTAL_REMOVED_KEY, 0L) + removed)
+            .apply()
+    }
+}
@@ -0,0 +1,87 @@
+package com.ici.mysched
+
+import android.app.AlarmManager
+import android.app.PendingIntent
+import android.content.Context
+import android.content.Intent
+import android.os.Build
+
+/**
+ * Builds and routes every intent that carries an [AlarmPayload].
+ *
+ * Arming paths (scheduler, snooze, test alarms) get their AlarmManager
+ * PendingIntent from [alarmPendingIntent]. On fire, [AlarmReceiver] reads
+ * the payload once and hands it to [dispatch], which starts
+ * [AlarmForegroundService] on Android 11+ (falling back to a direct
+ * launch) or [FullscreenAlarmActivity] directly on older versions. The
+ * same payload object is forwarded at each hop; no stage re-reads fields.
+ */
+object AlarmDispatcher {
+    private const val TAG = "MySched"
+
+    private const val LAUNCH_FLAGS = Intent.FLAG_ACTIVITY_NEW_TASK or
+        Intent.FLAG_ACTIVITY_CLEAR_TOP or
+        Intent.FLAG_ACTIVITY_SINGLE_TOP or
+        Intent.FLAG_ACTIVITY_EXCLUDE_FROM_RECENTS
+
+    /** Broadcast intent for [receiver] carrying [payload] in its byte form. */
+    @JvmStatic
+    fun alarmIntent(context: Context, receiver: Class<*>, payload: AlarmPayload): Intent {
+        return Intent(context, receiver)
+            .putExtra(AlarmPayload.EXTRA_PAYLOAD_BYTES, payload.toBytes())
+    }
+
+    @JvmStatic
+    fun alarmPendingIntent(context: Context, receiver: Class<*>, payload: AlarmPayload): PendingIntent {
+        return PendingIntent.getBroadcast(
+            context,
+            payload.requestCode,
+            alarmIntent(context, receiver, payload),
+            PendingIntent.FLAG_UPDATE_CURRENT or AlarmScheduler.pendingIntentImmutableFlag()
+        )
+    }
+
+    /** Arms [payload] on [AlarmReceiver] as an alarm clock at `payload.atMillis`. */
+    @JvmStatic
+    fun setAlarmClock(context: Context, payload: AlarmPayload) {
+        val am = context.getSystemService(Context.ALARM_SERVICE) as AlarmManager
+        val pi = alarmPendingIntent(context, AlarmReceiver::class.java, payload)
+        am.setAlarmClock(AlarmManager.AlarmClockInfo(payload.atMillis, pi), pi)
+    }
+
+    /** Intent for the alarm screen; callers add their own launch flags. */
+    @JvmStatic
+    fun activityIntent(context: Context, payload: AlarmPayload, scheduledElapsed: Long): Intent {
+        val intent = Intent(context, FullscreenAlarmActivity::class.java)
+            .putExtra(AlarmPayload.EXTRA_PAYLOAD, payload)
+        if (scheduledElapsed > 0L) {
+            intent.putExtra(AlarmLatency.EXTRA_SCHEDULED_ELAPSED, scheduledElapsed)
+        }
+        return intent
+    }
+
+    /** Routes a fired alarm to the foreground service or the alarm screen. */
+    @JvmStatic
+    fun dispatch(context: Context, payload: AlarmPayload, scheduledElapsed: Long) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+            android.util.Log.d(TAG, "[AlarmDispatcher] Using foreground service for alarm delivery")
+            if (AlarmForegroundService.startForAlarm(context, payload, scheduledElapsed)) return
+            android.util.Log.w(TAG, "[AlarmDispatcher] Foreground service unavailable, launching directly")
+        }
+        launchActivity(context, payload, scheduledElapsed)
+    }
+
+    /** Starts the alarm screen for [payload]; returns false if the launch threw. */
+    @JvmStatic
+    fun launchActivity(context: Context, payload: AlarmPayload, scheduledElapsed: Long): Boolean {
+        return try {
+            val intent = activityIntent(context, payload, scheduledElapsed).addFlags(LAUNCH_FLAGS)
+            context.startActivity(intent)
+            android.util.Log.d(TAG, "[AlarmDispatcher] Fullscreen alarm activity launched")
+            true
+        } catch (t: Throwable) {
+            android.util.Log.e(TAG, "[AlarmDispatcher] Failed to launch FullscreenAlarmActivity", t)
+            false
+        }
+    }
+}
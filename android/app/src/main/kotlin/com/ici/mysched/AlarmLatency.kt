@@ -0,0 +1,202 @@
+package com.ici.mysched
+
+import android.content.Context
+import android.content.Intent
+import android.os.Build
+import android.os.SystemClock
+import java.io.BufferedInputStream
+import java.io.BufferedOutputStream
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.File
+import java.io.FileInputStream
+import java.io.FileOutputStream
+import java.io.IOException
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLongArray
+
+/**
+ * Alarm delivery latency, measured from the scheduled trigger time to each
+ * stage of the fire path.
+ *
+ * [AlarmReceiver] turns the payload's wall-clock `atMillis` into an
+ * `elapsedRealtime` equivalent ([EXTRA_SCHEDULED_ELAPSED]), which is then
+ * forwarded, so every later stage is timed on the monotonic clock. Samples
+ * go into a fixed ring of packed longs (`stage:8 sdk:8 latencyMs:32`); the
+ * record path is a single atomic increment and store. The ring is written
+ * to `no_backup/alarm_latency.bin` a few seconds after the last sample.
+ */
+object AlarmLatency {
+    private const val TAG = "MySched"
+    private const val FILE_NAME = "alarm_latency.bin"
+    private const val MAGIC = 0x4D534C54 // "MSLT"
+    private const val VERSION: Byte = 1
+    private const val CAPACITY = 512
+    private const val PERSIST_DELAY_MS = 5_000L
+
+    const val EXTRA_SCHEDULED_ELAPSED = "scheduledElapsed"
+
+    const val STAGE_RECEIVER = 0
+    const val STAGE_SERVICE = 1
+    const val STAGE_ACTIVITY = 2
+    /** Not a latency: how long [AlarmWakeLocks] held an alarm's wake lock. */
+    const val STAGE_WAKE_HOLD = 3
+    private val STAGE_NAMES = arrayOf("receiver", "service", "activity", "wakeLockHold")
+
+    private val ring = AtomicLongArray(CAPACITY)
+    private val cursor = AtomicInteger(0)
+    private val persistPending = AtomicBoolean(false)
+    @Volatile
+    private var file: File? = null
+    private val executor = Executors.newSingleThreadScheduledExecutor { runnable ->
+        Thread(runnable, "AlarmLatency").apply { isDaemon = true }
+    }
+
+    /**
+     * Records the receiver stage and returns the monotonic scheduled time
+     * for later stages, or 0 when the alarm carried no trigger time.
+     */
+    @JvmStatic
+    fun markReceived(context: Context, atMillis: Long): Long {
+        if (atMillis <= 0L) return 0L
+        val lateBy = System.currentTimeMillis() - atMillis
+        val scheduledElapsed = SystemClock.elapsedRealtime() - lateBy
+        record(context, STAGE_RECEIVER, scheduledElapsed)
+        return scheduledElapsed
+    }
+
+    /** Records [stage] against the scheduled time carried by [intent], if any. */
+    @JvmStatic
+    fun mark(context: Context, stage: Int, intent: Intent?) {
+        val scheduledElapsed = intent?.getLongExtra(EXTRA_SCHEDULED_ELAPSED, 0L) ?: 0L
+        if (scheduledElapsed > 0L) record(context, stage, scheduledElapsed)
+    }
+
+    @JvmStatic
+    fun record(context: Context, stage: Int, scheduledElapsed: Long) {
+        recordDuration(context, stage, SystemClock.elapsedRealtime() - scheduledElapsed)
+    }
+
+    /** Records a sample of [durationMs] for [stage]. */
+    @JvmStatic
+    fun recordDuration(context: Context, stage: Int, durationMs: Long) {
+        ensureLoaded(context)
+        val latency = durationMs.coerceIn(0L, Int.MAX_VALUE.toLong())
+        val packed = ((stage.toLong() and 0xFFL) shl 40) or
+            ((Build.VERSION.SDK_INT.toLong() and 0xFFL) shl 32) or
+            latency
+        val slot = Math.floorMod(cursor.getAndIncrement(), CAPACITY)
+        ring.set(slot, packed)
+        schedulePersist()
+    }
+
+    /**
+     * p50/p95/p99 in ms per stage (wake-lock hold time included), overall and per Android version:
+     * `{count, sdk, stages: {stage: {count, p50, p95, p99}}, bySdk: {sdk: {stage: ...}}}`.
+     */
+    @JvmStatic
+    fun stats(context: Context): Map<String, Any> {
+        ensureLoaded(context)
+        val overall = HashMap<Int, MutableList<Long>>()
+        val bySdk = HashMap<Int, HashMap<Int, MutableList<Long>>>()
+        var count = 0
+        for (i in 0 until CAPACITY) {
+            val packed = ring.get(i)
+            if (packed == 0L) continue
+            val stage = ((packed ushr 40) and 0xFFL).toInt()
+            val sdk = ((packed ushr 32) and 0xFFL).toInt()
+            val latency = packed and 0xFFFFFFFFL
+            overall.getOrPut(stage) { ArrayList() }.add(latency)
+            bySdk.getOrPut(sdk) { HashMap() }.getOrPut(stage) { ArrayList() }.add(latency)
+            count++
+        }
+        return mapOf(
+            "count" to count,
+            "sdk" to Build.VERSION.SDK_INT,
+            "stages" to summarize(overall),
+            "bySdk" to bySdk.entries.associate { (sdk, stages) -> sdk.toString() to summarize(stages) },
+        )
+    }
+
+    private fun summarize(samples: Map<Int, MutableList<Long>>): Map<String, Any> {
+        val result = LinkedHashMap<String, Any>()
+        for (stage in STAGE_NAMES.indices) {
+            val values = samples[stage] ?: continue
+            values.sort()
+            result[STAGE_NAMES[stage]] = mapOf(
+                "count" to values.size,
+                "p50" to percentile(values, 50),
+                "p95" to percentile(values, 95),
+                "p99" to percentile(values, 99),
+            )
+        }
+        return result
+    }
+
+    /** Nearest-rank percentile of sorted [values]. */
+    private fun percentile(values: List<Long>, p: Int): Long {
+        val rank = Math.ceil(p / 100.0 * values.size).toInt().coerceIn(1, values.size)
+        return values[rank - 1]
+    }
+
+    private fun ensureLoaded(context: Context) {
+        if (file != null) return
+        synchronized(this) {
+            if (file != null) return
+            val appContext = context.applicationContext ?: context
+            val target = DirectBoot.noBackupFile(appContext, FILE_NAME)
+            if (target.exists()) {
+                try {
+                    DataInputStream(BufferedInputStream(FileInputStream(target))).use { input ->
+                        if (input.readInt() != MAGIC || input.readByte() != VERSION) {
+                            throw IOException("Unrecognised latency file header")
+                        }
+                        cursor.set(input.readInt())
+                        val stored = input.readInt()
+                        for (i in 0 until minOf(stored, CAPACITY)) {
+                            ring.set(i, input.readLong())
+                        }
+                    }
+                } catch (e: IOException) {
+                    android.util.Log.w(TAG, "[AlarmLatency] Discarding unreadable latency file", e)
+                }
+            }
+            file = target
+        }
+    }
+
+    private fun schedulePersist() {
+        if (!persistPending.compareAndSet(false, true)) return
+        executor.schedule({
+            persistPending.set(false)
+            persist()
+        }, PERSIST_DELAY_MS, TimeUnit.MILLISECONDS)
+    }
+
+    private fun persist() {
+        val target = file ?: return
+        val tmp = File(target.path + ".tmp")
+        try {
+            FileOutputStream(tmp).use { stream ->
+                val out = DataOutputStream(BufferedOutputStream(stream))
+                out.writeInt(MAGIC)
+                out.writeByte(VERSION.toInt())
+                out.writeInt(cursor.get())
+                out.writeInt(CAPACITY)
+                for (i in 0 until CAPACITY) {
+                    out.writeLong(ring.get(i))
+                }
+                out.flush()
+            }
+            if (!tmp.renameTo(target)) {
+                throw IOException("Failed to replace ${target.name}")
+            }
+        } catch (e: IOException) {
+            android.util.Log.e(TAG, "[AlarmLatency] Persist failed", e)
+            tmp.delete()
+        }
+    }
+}
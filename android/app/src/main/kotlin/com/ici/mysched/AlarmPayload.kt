@@ -0,0 +1,220 @@
+package com.ici.mysched
+
+import android.content.Intent
+import android.os.Build
+import android.os.Parcel
+import android.os.Parcelable
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.IOException
+
+/**
+ * Everything the fire path needs to know about one alarm occurrence.
+ *
+ * In-process hops (receiver to service to activity) carry it as a
+ * Parcelable under [EXTRA_PAYLOAD]. PendingIntents handed to AlarmManager
+ * carry [toBytes] under [EXTRA_PAYLOAD_BYTES] instead: the system merges
+ * extras into alarm intents, which unparcels the bundle in a process that
+ * cannot load this class.
+ *
+ * Byte layout: `version:u8 flags:u8 requestCode:i32 classId:i32
+ * atMillis:i64 occurrenceKey [title] [body] [subject] [room] [startTime]
+ * [endTime] [chainAtMillis:i64]` with strings in modified UTF-8.
+ */
+data class AlarmPayload(
+    val requestCode: Int,
+    val classId: Int,
+    val atMillis: Long,
+    val occurrenceKey: String,
+    val title: String?,
+    val body: String?,
+    val subject: String?,
+    val room: String?,
+    val startTime: String?,
+    val endTime: String?,
+    val chainAtMillis: Long = 0L,
+) : Parcelable {
+
+    /** The full-screen alarm a chained heads-up continues into (see [AlarmSpec.chainAtMillis]). */
+    fun chainTarget(): AlarmPayload = copy(atMillis = chainAtMillis, chainAtMillis = 0L)
+
+    /** Same alarm under a new id and occurrence, e.g. for a snooze. */
+    fun reschedule(requestCode: Int, atMillis: Long, occurrenceKey: String): AlarmPayload =
+        copy(requestCode = requestCode, atMillis = atMillis, occurrenceKey = occurrenceKey)
+
+    /**
+     * Spec to persist for this alarm when native code arms it on its own,
+     * e.g. a snooze, so a reboot can restore it. No Dart content hash.
+     */
+    fun toSpec(): AlarmSpec = AlarmSpec(
+        id = requestCode,
+        atMillis = atMillis,
+        title = title ?: "Alarm",
+        body = body ?: "It's time!",
+        classId = classId,
+        occurrenceKey = occurrenceKey,
+        subject = subject,
+        room = room,
+        startTime = startTime,
+        endTime = endTime,
+        headsUpOnly = false,
+        hash = AlarmRegistry.NO_HASH,
+        chainAtMillis = chainAtMillis,
+    )
+
+    fun toBytes(): ByteArray {
+        var flags = 0
+        if (title != null) flags = flags or FLAG_TITLE
+        if (body != null) flags = flags or FLAG_BODY
+        if (subject != null) flags = flags or FLAG_SUBJECT
+        if (room != null) flags = flags or FLAG_ROOM
+        if (startTime != null) flags = flags or FLAG_START
+        if (endTime != null) flags = flags or FLAG_END
+        if (chainAtMillis > 0L) flags = flags or FLAG_CHAIN
+        val bytes = ByteArrayOutputStream(64)
+        DataOutputStream(bytes).use { out ->
+            out.writeByte(VERSION.toInt())
+            out.writeByte(flags)
+            out.writeInt(requestCode)
+            out.writeInt(classId)
+            out.writeLong(atMillis)
+            out.writeUTF(occurrenceKey)
+            title?.let { out.writeUTF(it) }
+            body?.let { out.writeUTF(it) }
+            subject?.let { out.writeUTF(it) }
+            room?.let { out.writeUTF(it) }
+            startTime?.let { out.writeUTF(it) }
+            endTime?.let { out.writeUTF(it) }
+            if (chainAtMillis > 0L) out.writeLong(chainAtMillis)
+        }
+        return bytes.toByteArray()
+    }
+
+    override fun describeContents(): Int = 0
+
+    override fun writeToParcel(dest: Parcel, flags: Int) {
+        dest.writeInt(requestCode)
+        dest.writeInt(classId)
+        dest.writeLong(atMillis)
+        dest.writeString(occurrenceKey)
+        dest.writeString(title)
+        dest.writeString(body)
+        dest.writeString(subject)
+        dest.writeString(room)
+        dest.writeString(startTime)
+        dest.writeString(endTime)
+        dest.writeLong(chainAtMillis)
+    }
+
+    companion object {
+        const val EXTRA_PAYLOAD = "com.ici.mysched.extra.ALARM_PAYLOAD"
+        const val EXTRA_PAYLOAD_BYTES = "com.ici.mysched.extra.ALARM_PAYLOAD_BYTES"
+
+        private const val VERSION: Byte = 1
+        private const val FLAG_TITLE = 1
+        private const val FLAG_BODY = 1 shl 1
+        private const val FLAG_SUBJECT = 1 shl 2
+        private const val FLAG_ROOM = 1 shl 3
+        private const val FLAG_START = 1 shl 4
+        private const val FLAG_END = 1 shl 5
+        private const val FLAG_CHAIN = 1 shl 6
+
+        @JvmField
+        val CREATOR = object : Parcelable.Creator<AlarmPayload> {
+            override fun createFromParcel(source: Parcel): AlarmPayload = AlarmPayload(
+                requestCode = source.readInt(),
+                classId = source.readInt(),
+                atMillis = source.readLong(),
+                occurrenceKey = source.readString() ?: "",
+                title = source.readString(),
+                body = source.readString(),
+                subject = source.readString(),
+                room = source.readString(),
+                startTime = source.readString(),
+                endTime = source.readString(),
+                chainAtMillis = source.readLong(),
+            )
+
+            override fun newArray(size: Int): Array<AlarmPayload?> = arrayOfNulls(size)
+        }
+
+        @JvmStatic
+        fun of(spec: AlarmSpec): AlarmPayload = AlarmPayload(
+            requestCode = spec.id,
+            classId = spec.classId,
+            atMillis = spec.atMillis,
+            occurrenceKey = spec.occurrenceKey,
+            title = spec.title,
+            body = spec.body,
+            subject = spec.subject,
+            room = spec.room,
+            startTime = spec.startTime,
+            endTime = spec.endTime,
+            chainAtMillis = spec.chainAtMillis,
+        )
+
+        @JvmStatic
+        @Throws(IOException::class)
+        fun fromBytes(bytes: ByteArray): AlarmPayload {
+            DataInputStream(ByteArrayInputStream(bytes)).use { input ->
+                if (input.readByte() != VERSION) throw IOException("Unknown alarm payload version")
+                val flags = input.readUnsignedByte()
+                val requestCode = input.readInt()
+                val classId = input.readInt()
+                val atMillis = input.readLong()
+                val occurrenceKey = input.readUTF()
+                return AlarmPayload(
+                    requestCode = requestCode,
+                    classId = classId,
+                    atMillis = atMillis,
+                    occurrenceKey = occurrenceKey,
+                    title = if ((flags and FLAG_TITLE) != 0) input.readUTF() else null,
+                    body = if ((flags and FLAG_BODY) != 0) input.readUTF() else null,
+                    subject = if ((flags and FLAG_SUBJECT) != 0) input.readUTF() else null,
+                    room = if ((flags and FLAG_ROOM) != 0) input.readUTF() else null,
+                    startTime = if ((flags and FLAG_START) != 0) input.readUTF() else null,
+                    endTime = if ((flags and FLAG_END) != 0) input.readUTF() else null,
+                    chainAtMillis = if ((flags and FLAG_CHAIN) != 0) input.readLong() else 0L,
+                )
+            }
+        }
+
+        /**
+         * Reads the payload from [intent]: the parcelable form first, then
+         * the byte form, then the per-field extras used by alarms armed
+         * before this type existed.
+         */
+        @JvmStatic
+        fun from(intent: Intent): AlarmPayload {
+            val parcelled = if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.UPSIDE_DOWN_CAKE) {
+                intent.getParcelableExtra(EXTRA_PAYLOAD, AlarmPayload::class.java)
+            } else {
+                @Suppress("DEPRECATION")
+                intent.getParcelableExtra(EXTRA_PAYLOAD)
+            }
+            if (parcelled != null) return parcelled
+            val bytes = intent.getByteArrayExtra(EXTRA_PAYLOAD_BYTES)
+            if (bytes != null) {
+                try {
+                    return fromBytes(bytes)
+                } catch (e: IOException) {
+                    android.util.Log.w("MySched", "[AlarmPayload] Unreadable payload bytes", e)
+                }
+            }
+            return AlarmPayload(
+                requestCode = intent.getIntExtra("requestCode", 0),
+                classId = intent.getIntExtra("classId", -1),
+                atMillis = intent.getLongExtra("atMillis", 0L),
+                occurrenceKey = intent.getStringExtra("occurrenceKey") ?: "",
+                title = intent.getStringExtra("title"),
+                body = intent.getStringExtra("body"),
+                subject = intent.getStringExtra("subject"),
+                room = intent.getStringExtra("room"),
+                startTime = intent.getStringExtra("startTime"),
+                endTime = intent.getStringExtra("endTime"),
+            )
+        }
+    }
+}
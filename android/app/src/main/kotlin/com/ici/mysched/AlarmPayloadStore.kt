@@ -0,0 +1,223 @@
+package com.ici.mysched
+
+import java.io.BufferedInputStream
+import java.io.BufferedOutputStream
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.File
+import java.io.FileInputStream
+import java.io.FileOutputStream
+import java.io.IOException
+
+/**
+ * Full payload of every armed alarm, keyed by id.
+ *
+ * AlarmManager forgets everything on reboot; this store keeps enough of
+ * each [AlarmSpec] (trigger time, class, occurrence, labels) for
+ * [AlarmScheduler.restore] to re-arm it without the Flutter engine.
+ *
+ * Mutations only touch the in-memory map and mark it dirty; [flush]
+ * rewrites the file as one snapshot (temp file, fsync, rename). The
+ * file holds at most one plan's worth of alarms, so whole rewrites stay
+ * cheap and there is no log to compact.
+ *
+ * Record layout after the header:
+ * `id:i32 atMillis:i64 classId:i32 hash:i32 flags:u8 title body occurrenceKey
+ * [subject] [room] [startTime] [endTime] [chainAtMillis:i64]` with strings
+ * in modified UTF-8.
+ */
+class AlarmPayloadStore(private val file: File) {
+    private val payloads = LinkedHashMap<Int, AlarmSpec>()
+    private var loaded = false
+    private var dirty = false
+
+    @Synchronized
+    fun get(id: Int): AlarmSpec? {
+        ensureLoaded()
+        return payloads[id]
+    }
+
+    @Synchronized
+    fun size(): Int {
+        ensureLoaded()
+        return payloads.size
+    }
+
+    @Synchronized
+    fun all(): List<AlarmSpec> {
+        ensureLoaded()
+        return ArrayList(payloads.values)
+    }
+
+    /** Stores every spec, replacing older payloads. Returns how many changed. */
+    @Synchronized
+    fun putAll(specs: Collection<AlarmSpec>): Int {
+        ensureLoaded()
+        var changed = 0
+        for (spec in specs) {
+            if (payloads.put(spec.id, spec) != spec) changed++
+        }
+        if (changed > 0) dirty = true
+        return changed
+    }
+
+    /** Replaces the whole payload set. Returns false when nothing changed. */
+    @Synchronized
+    fun replaceAll(specs: Collection<AlarmSpec>): Boolean {
+        ensureLoaded()
+        val next = LinkedHashMap<Int, AlarmSpec>(specs.size)
+        specs.forEach { next[it.id] = it }
+        if (next == payloads) return false
+        payloads.clear()
+        payloads.putAll(next)
+        dirty = true
+        return true
+    }
+
+    @Synchronized
+    fun remove(id: Int): Boolean {
+        ensureLoaded()
+        val removed = payloads.remove(id) != null
+        if (removed) dirty = true
+        return removed
+    }
+
+    @Synchronized
+    fun removeAll(ids: Collection<Int>): Int {
+        ensureLoaded()
+        var removed = 0
+        for (id in ids) {
+            if (payloads.remove(id) != null) removed++
+        }
+        if (removed > 0) dirty = true
+        return removed
+    }
+
+    @Synchronized
+    fun clear() {
+        ensureLoaded()
+        if (payloads.isEmpty() && !file.exists()) return
+        payloads.clear()
+        dirty = true
+    }
+
+    @Synchronized
+    fun hasPendingWrites(): Boolean = dirty
+
+    /** Writes the current payload set if anything changed since the last flush. */
+    @Synchronized
+    fun flush() {
+        if (!dirty) return
+        writeSnapshot()
+    }
+
+    private fun ensureLoaded() {
+        if (loaded) return
+        loaded = true
+        if (!file.exists()) return
+        try {
+            DataInputStream(BufferedInputStream(FileInputStream(file))).use { input ->
+                if (input.readInt() != MAGIC || input.readByte() != VERSION) {
+                    throw IOException("Unrecognised payload store header")
+                }
+                val count = input.readInt()
+                repeat(count) {
+                    val spec = readSpec(input)
+                    payloads[spec.id] = spec
+                }
+            }
+        } catch (e: IOException) {
+            android.util.Log.w(TAG, "[AlarmPayloadStore] Discarding unreadable payload store", e)
+            payloads.clear()
+            dirty = true
+        }
+    }
+
+    private fun writeSnapshot() {
+        val parent = file.parentFile
+        if (parent != null && !parent.exists()) parent.mkdirs()
+        val tmp = File(file.path + ".tmp")
+        try {
+            FileOutputStream(tmp).use { stream ->
+                val out = DataOutputStream(BufferedOutputStream(stream))
+                out.writeInt(MAGIC)
+                out.writeByte(VERSION.toInt())
+                out.writeInt(payloads.size)
+                for (spec in payloads.values) {
+                    writeSpec(out, spec)
+                }
+                out.flush()
+                stream.fd.sync()
+            }
+            if (!tmp.renameTo(file)) {
+                throw IOException("Failed to replace ${file.name}")
+            }
+            dirty = false
+        } catch (e: IOException) {
+            android.util.Log.e(TAG, "[AlarmPayloadStore] Snapshot failed", e)
+            tmp.delete()
+        }
+    }
+
+    private fun writeSpec(out: DataOutputStream, spec: AlarmSpec) {
+        var flags = 0
+        if (spec.headsUpOnly) flags = flags or FLAG_HEADS_UP
+        if (spec.subject != null) flags = flags or FLAG_SUBJECT
+        if (spec.room != null) flags = flags or FLAG_ROOM
+        if (spec.startTime != null) flags = flags or FLAG_START
+        if (spec.endTime != null) flags = flags or FLAG_END
+        if (spec.isChained) flags = flags or FLAG_CHAIN
+        out.writeInt(spec.id)
+        out.writeLong(spec.atMillis)
+        out.writeInt(spec.classId)
+        out.writeInt(spec.hash)
+        out.writeByte(flags)
+        out.writeUTF(spec.title)
+        out.writeUTF(spec.body)
+        out.writeUTF(spec.occurrenceKey)
+        spec.subject?.let { out.writeUTF(it) }
+        spec.room?.let { out.writeUTF(it) }
+        spec.startTime?.let { out.writeUTF(it) }
+        spec.endTime?.let { out.writeUTF(it) }
+        if (spec.isChained) out.writeLong(spec.chainAtMillis)
+    }
+
+    private fun readSpec(input: DataInputStream): AlarmSpec {
+        val id = input.readInt()
+        val atMillis = input.readLong()
+        val classId = input.readInt()
+        val hash = input.readInt()
+        val flags = input.readUnsignedByte()
+        val title = input.readUTF()
+        val body = input.readUTF()
+        val occurrenceKey = input.readUTF()
+        return AlarmSpec(
+            id = id,
+            atMillis = atMillis,
+            title = title,
+            body = body,
+            classId = classId,
+            occurrenceKey = occurrenceKey,
+            subject = if ((flags and FLAG_SUBJECT) != 0) input.readUTF() else null,
+            room = if ((flags and FLAG_ROOM) != 0) input.readUTF() else null,
+            startTime = if ((flags and FLAG_START) != 0) input.readUTF() else null,
+            endTime = if ((flags and FLAG_END) != 0) input.readUTF() else null,
+            headsUpOnly = (flags and FLAG_HEADS_UP) != 0,
+            hash = hash,
+            chainAtMillis = if ((flags and FLAG_CHAIN) != 0) input.readLong() else 0L,
+        )
+    }
+
+    companion object {
+        private const val TAG = "MySched"
+        private const val MAGIC = 0x4D534150 // "MSAP"
+        private const val VERSION: Byte = 1
+
+        private const val FLAG_HEADS_UP = 1
+        private const val FLAG_SUBJECT = 1 shl 1
+        private const val FLAG_ROOM = 1 shl 2
+        private const val FLAG_START = 1 shl 3
+        private const val FLAG_END = 1 shl 4
+        private const val FLAG_CHAIN = 1 shl 5
+    }
+}
@@ -1,12 +1,16 @@
 package com.ici.mysched
 
 import android.content.Context
-import org.json.JSONArray
 import org.json.JSONObject
 
 object AlarmPrefsHelper {
     private const val PREFS_NAME = "com.example.mysched.alarms"
     private const val ACK_MAP_KEY = "notif_ack_map"
+    private const val ACK_KEY_PREFIX = "ack_"
+    private const val ACK_FILE = "alarm_acks.bin"
+
+    @Volatile
+    private var sharedAcks: AckStore? = null
 
     @JvmStatic
     fun setOccurrenceAcknowledged(
@@ -16,45 +20,23 @@ object AlarmPrefsHelper {
         acknowledged: Boolean,
     ) {
         if (classId == -1 || occurrenceKey.isEmpty()) return
+        if (ackStore(context).set(classId, occurrenceKey, acknowledged)) {
+            AlarmStore.scheduleFlush(context)
+        }
+    }
 
-        val prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)
-        val boolKey = "ack_${classId}_${occurrenceKey}"
-        prefs.edit().apply {
-            if (acknowledged) {
-                putBoolean(boolKey, true)
-            } else {
-                remove(boolKey)
-            }
-        }.apply()
+    /** Clears several acknowledgements with one store write. */
+    @JvmStatic
+    fun clearOccurrences(context: Context, occurrences: List<Pair<Int, String>>) {
+        val valid = occurrences.filter { (classId, key) -> classId != -1 && key.isNotEmpty() }
+        if (valid.isEmpty()) return
+        if (ackStore(context).removeAll(valid) > 0) AlarmStore.scheduleFlush(context)
+    }
 
-        try {
-            val root = JSONObject(prefs.getString(ACK_MAP_KEY, "{}") ?: "{}")
-            val classKey = classId.toString()
-            if (acknowledged) {
-                val array = if (root.has(classKey)) root.getJSONArray(classKey) else JSONArray()
-                if (!jsonArrayContains(array, occurrenceKey)) {
-                    array.put(occurrenceKey)
-                }
-                root.put(classKey, array)
-            } else if (root.has(classKey)) {
-                val array = root.getJSONArray(classKey)
-                val retained = mutableListOf<String>()
-                for (i in 0 until array.length()) {
-                    val value = array.optString(i)
-                    if (value != occurrenceKey && value.isNotEmpty()) {
-                        retained.add(value)
-                    }
-                }
-                if (retained.isEmpty()) {
-                    root.remove(classKey)
-                } else {
-                    root.put(classKey, JSONArray(retained))
-                }
-            }
-            prefs.edit().putString(ACK_MAP_KEY, root.toString()).apply()
-        } catch (_: Exception) {
-            // ignore malformed JSON
-        }
+    /** Writes pending ack changes, if the store has been opened. Called by AlarmStore's commit. */
+    @JvmStatic
+    fun flushAcks() {
+        sharedAcks?.flush()
     }
 
     @JvmStatic
@@ -64,23 +46,68 @@ object AlarmPrefsHelper {
         occurrenceKey: String,
     ): Boolean {
         if (classId == -1 || occurrenceKey.isEmpty()) return false
-        val prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)
-        val boolKey = "ack_${classId}_${occurrenceKey}"
-        if (prefs.getBoolean(boolKey, false)) return true
-        return try {
-            val root = JSONObject(prefs.getString(ACK_MAP_KEY, "{}") ?: "{}")
-            val classKey = classId.toString()
-            if (!root.has(classKey)) return false
-            jsonArrayContains(root.getJSONArray(classKey), occurrenceKey)
-        } catch (_: Exception) {
-            false
+        return ackStore(context).contains(classId, occurrenceKey)
+    }
+
+    /**
+     * Shared ack store. On first use the legacy `ack_<classId>_<key>`
+     * booleans and the `notif_ack_map` JSON blob are imported and removed.
+     */
+    @JvmStatic
+    fun ackStore(context: Context): AckStore {
+        sharedAcks?.let { return it }
+        synchronized(this) {
+            sharedAcks?.let { return it }
+            val appContext = context.applicationContext ?: context
+            val created = AckStore(DirectBoot.noBackupFile(appContext, ACK_FILE))
+            if (created.size() == 0 && created.createdFresh && DirectBoot.isUnlocked(appContext)) {
+                migrateLegacyAcks(appContext, created)
+            }
+            sharedAcks = created
+            return created
         }
     }
 
-    private fun jsonArrayContains(array: JSONArray, value: String): Boolean {
-        for (i in 0 until array.length()) {
-            if (value == array.optString(i)) return true
+    private fun migrateLegacyAcks(context: Context, target: AckStore) {
+        val prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)
+        val legacyKeys = mutableListOf<String>()
+        val occurrences = mutableListOf<Pair<Int, String>>()
+        for ((key, value) in prefs.all) {
+            if (!key.startsWith(ACK_KEY_PREFIX)) continue
+            legacyKeys.add(key)
+            if (value != true) continue
+            val parts = key.removePrefix(ACK_KEY_PREFIX).split('_', limit = 2)
+            val classId = parts.getOrNull(0)?.toIntOrNull() ?: continue
+            val occurrenceKey = parts.getOrNull(1) ?: continue
+            occurrences.add(classId to occurrenceKey)
         }
-        return false
+        val rawMap = prefs.getString(ACK_MAP_KEY, null)
+        if (rawMap != null) {
+            try {
+                val root = JSONObject(rawMap)
+                for (classKey in root.keys()) {
+                    val classId = classKey.toIntOrNull() ?: continue
+                    val array = root.optJSONArray(classKey) ?: continue
+                    for (i in 0 until array.length()) {
+                        val value = array.optString(i)
+                        if (value.isNotEmpty()) occurrences.add(classId to value)
+                    }
+                }
+            } catch (_: Exception) {
+                // ignore malformed JSON
+            }
+        }
+        if (legacyKeys.isEmpty() && rawMap == null) return
+        // Expired occurrences are dropped here rather than carried over.
+        target.addAll(occurrences)
+        target.flush()
+        prefs.edit().apply {
+            legacyKeys.forEach { remove(it) }
+            remove(ACK_MAP_KEY)
+        }.apply()
+        android.util.Log.i(
+            "MySched",
+            "[AlarmPrefsHelper] Migrated ${occurrences.size} legacy acks"
+        )
     }
 }
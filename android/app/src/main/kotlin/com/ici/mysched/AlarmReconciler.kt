@@ -0,0 +1,83 @@
+package com.ici.mysched
+
+import android.content.Context
+
+/**
+ * Brings the armed alarm set in line with a desired plan.
+ *
+ * The plan arrives with a content hash per alarm. Alarms whose id and hash
+ * already match the registry are left alone; only added, changed, and stale
+ * alarms reach AlarmManager, so an unchanged plan costs no AlarmManager calls.
+ */
+object AlarmReconciler {
+    private const val TAG = "MySched"
+
+    /**
+     * Registry state survives force-stops and reboots, armed alarms do not.
+     * The first pass in each process confirms unchanged alarms still have
+     * their PendingIntent before trusting the registry.
+     */
+    @Volatile
+    private var verifiedThisProcess = false
+
+    class Outcome(
+        val armed: List<Int>,
+        val cancelled: List<Int>,
+        val unchanged: Int,
+        val failed: List<Int>,
+    ) {
+        fun toMap(): Map<String, Any> = mapOf(
+            "armed" to armed,
+            "cancelled" to cancelled,
+            "unchanged" to unchanged,
+            "failed" to failed,
+        )
+    }
+
+    /**
+     * Reconciles against [desired]. Ids in [owned] (tracked by the caller)
+     * or armed with a content hash that are missing from [desired] are cancelled.
+     */
+    @JvmStatic
+    @Synchronized
+    fun reconcile(context: Context, desired: List<AlarmSpec>, owned: Collection<Int>): Outcome {
+        val registry = AlarmStore.registry(context)
+        val known = registry.hashes()
+        val desiredIds = desired.mapTo(HashSet(desired.size)) { it.id }
+
+        val stale = LinkedHashSet<Int>()
+        owned.filterTo(stale) { it !in desiredIds }
+        known.keys.filterTo(stale) { it !in desiredIds }
+
+        val verify = !verifiedThisProcess
+        val toArm = ArrayList<AlarmSpec>()
+        var unchanged = 0
+        for (spec in desired) {
+            val same = spec.hash != AlarmRegistry.NO_HASH && known[spec.id] == spec.hash
+            if (same && (!verify || AlarmScheduler.isArmed(context, spec))) {
+                unchanged++
+            } else {
+                toArm.add(spec)
+            }
+        }
+
+        if (stale.isNotEmpty()) {
+            AlarmScheduler.cancelBatch(context, stale)
+        }
+        val armed = ArrayList<Int>(toArm.size)
+        val failed = ArrayList<Int>()
+        if (toArm.isNotEmpty()) {
+            AlarmScheduler.scheduleBatch(context, toArm).forEach { (id, ok) ->
+                if (ok) armed.add(id) else failed.add(id)
+            }
+        }
+        verifiedThisProcess = true
+
+        android.util.Log.d(
+            TAG,
+            "[AlarmReconciler] armed=${armed.size} cancelled=${stale.size} " +
+                "unchanged=$unchanged failed=${failed.size}"
+        )
+        return Outcome(armed, stale.toList(), unchanged, failed)
+    }
+}
@@ -0,0 +1,407 @@
+package com.ici.mysched
+
+import java.io.BufferedInputStream
+import java.io.BufferedOutputStream
+import java.io.ByteArrayOutputStream
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.EOFException
+import java.io.File
+import java.io.FileInputStream
+import java.io.FileOutputStream
+import java.io.IOException
+
+/**
+ * Compact binary registry of armed native alarm ids.
+ *
+ * State lives in two in-memory indexes (id -> class, class -> ids) so
+ * add/remove/contains are O(1). Every mutation appends a small fixed-size
+ * record to [file]; when the log grows well past the live set it is
+ * rewritten as a snapshot (write to a temp file, then rename).
+ *
+ * Each id may also carry a content hash of the alarm it was armed with,
+ * which lets [AlarmReconciler] skip alarms whose plan did not change.
+ *
+ * With [deferWrites], records collect in memory until [flush] so bursts of
+ * mutations share one disk write; the in-memory view is always current.
+ * Classes whose ids change are remembered until [takeClassChanges], so
+ * mirrors of the class map can be patched instead of rebuilt.
+ *
+ * Record layout after the header: `op:u8 id:i32 [classId:i32 | hash:i32]`.
+ */
+class AlarmRegistry(
+    private val file: File,
+    private val deferWrites: Boolean = false,
+) {
+    private val idToClass = HashMap<Int, Int>()
+    private val classToIds = HashMap<Int, LinkedHashSet<Int>>()
+    private val idToHash = HashMap<Int, Int>()
+    private val changedClasses = HashSet<Int>()
+    private var recordCount = 0
+    private var loaded = false
+    private val pendingBytes = ByteArrayOutputStream()
+    private val pending = DataOutputStream(pendingBytes)
+
+    /** True when the backing file did not exist on first load. */
+    var createdFresh: Boolean = false
+        private set
+
+    @Synchronized
+    fun contains(id: Int): Boolean {
+        ensureLoaded()
+        return idToClass.containsKey(id)
+    }
+
+    @Synchronized
+    fun classOf(id: Int): Int {
+        ensureLoaded()
+        return idToClass[id] ?: NO_CLASS
+    }
+
+    @Synchronized
+    fun size(): Int {
+        ensureLoaded()
+        return idToClass.size
+    }
+
+    @Synchronized
+    fun ids(): Set<Int> {
+        ensureLoaded()
+        return HashSet(idToClass.keys)
+    }
+
+    /** Content hash recorded for [id], or [NO_HASH]. */
+    @Synchronized
+    fun hashOf(id: Int): Int {
+        ensureLoaded()
+        return idToHash[id] ?: NO_HASH
+    }
+
+    /** Snapshot of id -> content hash for every id armed with a hash. */
+    @Synchronized
+    fun hashes(): Map<Int, Int> {
+        ensureLoaded()
+        return HashMap(idToHash)
+    }
+
+    @Synchronized
+    fun idsForClass(classId: Int): Set<Int> {
+        ensureLoaded()
+        return classToIds[classId]?.let { LinkedHashSet(it) } ?: emptySet()
+    }
+
+    @Synchronized
+    fun classMap(): Map<Int, Set<Int>> {
+        ensureLoaded()
+        val copy = LinkedHashMap<Int, Set<Int>>(classToIds.size)
+        for ((classId, ids) in classToIds) {
+            copy[classId] = LinkedHashSet(ids)
+        }
+        return copy
+    }
+
+    /**
+     * Classes whose ids changed since the last call, each with its current
+     * ids (empty once none are left). Ids without a class are not reported.
+     */
+    @Synchronized
+    fun takeClassChanges(): Map<Int, Set<Int>> {
+        ensureLoaded()
+        if (changedClasses.isEmpty()) return emptyMap()
+        val changes = HashMap<Int, Set<Int>>(changedClasses.size)
+        for (classId in changedClasses) {
+            changes[classId] = classToIds[classId]?.let { LinkedHashSet(it) } ?: emptySet()
+        }
+        changedClasses.clear()
+        return changes
+    }
+
+    /**
+     * Tracks [id]. A [NO_CLASS] [classId] keeps whatever class the id is
+     * already linked to. Returns false when nothing changed.
+     */
+    @Synchronized
+    fun add(id: Int, classId: Int = NO_CLASS): Boolean {
+        ensureLoaded()
+        val target = resolveClass(id, classId) ?: return false
+        applyPut(id, target)
+        append { writePut(it, id, target) }
+        return true
+    }
+
+    /**
+     * Tracks every id in [entries] (id -> classId) with a single append.
+     * When [hashes] is given, each id's content hash is replaced by its
+     * entry there; ids missing from it lose any hash they had.
+     */
+    @Synchronized
+    fun addAll(entries: Map<Int, Int>, hashes: Map<Int, Int>? = null): Int {
+        ensureLoaded()
+        val changed = LinkedHashMap<Int, Int>()
+        val rehashed = LinkedHashMap<Int, Int>()
+        for ((id, classId) in entries) {
+            val target = resolveClass(id, classId)
+            if (target != null) {
+                applyPut(id, target)
+                changed[id] = target
+            }
+            if (hashes != null) {
+                val hash = hashes[id] ?: NO_HASH
+                if (hash != (idToHash[id] ?: NO_HASH)) {
+                    applyHash(id, hash)
+                    rehashed[id] = hash
+                }
+            }
+        }
+        if (changed.isNotEmpty() || rehashed.isNotEmpty()) {
+            append { out ->
+                changed.forEach { (id, classId) -> writePut(out, id, classId) }
+                rehashed.forEach { (id, hash) -> writeHash(out, id, hash) }
+            }
+        }
+        return changed.keys.union(rehashed.keys).size
+    }
+
+    /** Drops the class link for [id] if it currently belongs to [classId]. */
+    @Synchronized
+    fun unlinkClass(classId: Int, id: Int): Boolean {
+        ensureLoaded()
+        if (classId == NO_CLASS || idToClass[id] != classId) return false
+        applyPut(id, NO_CLASS)
+        append { writePut(it, id, NO_CLASS) }
+        return true
+    }
+
+    @Synchronized
+    fun remove(id: Int): Boolean {
+        ensureLoaded()
+        if (!applyRemove(id)) return false
+        append { writeRemove(it, id) }
+        return true
+    }
+
+    @Synchronized
+    fun removeAll(ids: Collection<Int>): Int {
+        ensureLoaded()
+        val removed = ids.filter { applyRemove(it) }
+        if (removed.isNotEmpty()) {
+            append { out -> removed.forEach { writeRemove(out, it) } }
+        }
+        return removed.size
+    }
+
+    /** True while mutations are buffered and not yet on disk. */
+    @Synchronized
+    fun hasPendingWrites(): Boolean = pendingBytes.size() > 0
+
+    /** Appends buffered records to [file]. Cheap when nothing is pending. */
+    @Synchronized
+    fun flush() {
+        if (pendingBytes.size() == 0) return
+        if (!file.exists()) {
+            writeSnapshot()
+            return
+        }
+        try {
+            FileOutputStream(file, true).use { pendingBytes.writeTo(it) }
+            pendingBytes.reset()
+        } catch (e: IOException) {
+            android.util.Log.e(TAG, "[AlarmRegistry] Append failed, rewriting snapshot", e)
+            writeSnapshot()
+            return
+        }
+        compactIfNeeded()
+    }
+
+    @Synchronized
+    fun clear() {
+        ensureLoaded()
+        if (idToClass.isEmpty() && recordCount == 0) return
+        changedClasses.addAll(classToIds.keys)
+        idToClass.clear()
+        classToIds.clear()
+        idToHash.clear()
+        writeSnapshot()
+    }
+
+    private fun resolveClass(id: Int, classId: Int): Int? {
+        val current = idToClass[id]
+        val target = if (classId == NO_CLASS) current ?: NO_CLASS else classId
+        return if (current == target && idToClass.containsKey(id)) null else target
+    }
+
+    private fun applyPut(id: Int, classId: Int) {
+        val previous = idToClass.put(id, classId)
+        if (previous != classId) {
+            if (previous != null) unindex(previous, id)
+            markChanged(previous)
+            markChanged(classId)
+        }
+        if (classId != NO_CLASS) {
+            classToIds.getOrPut(classId) { LinkedHashSet() }.add(id)
+        }
+    }
+
+    private fun applyRemove(id: Int): Boolean {
+        if (!idToClass.containsKey(id)) return false
+        val classId = idToClass.remove(id) ?: NO_CLASS
+        unindex(classId, id)
+        markChanged(classId)
+        idToHash.remove(id)
+        return true
+    }
+
+    private fun markChanged(classId: Int?) {
+        if (classId != null && classId != NO_CLASS) changedClasses.add(classId)
+    }
+
+    private fun applyHash(id: Int, hash: Int) {
+        if (hash == NO_HASH) {
+            idToHash.remove(id)
+        } else if (idToClass.containsKey(id)) {
+            idToHash[id] = hash
+        }
+    }
+
+    private fun unindex(classId: Int, id: Int) {
+        if (classId == NO_CLASS) return
+        val set = classToIds[classId] ?: return
+        set.remove(id)
+        if (set.isEmpty()) classToIds.remove(classId)
+    }
+
+    private fun ensureLoaded() {
+        if (loaded) return
+        loaded = true
+        if (!file.exists()) {
+            createdFresh = true
+            return
+        }
+        var torn = false
+        var version = VERSION
+        try {
+            DataInputStream(BufferedInputStream(FileInputStream(file))).use { input ->
+                if (input.readInt() != MAGIC) {
+                    throw IOException("Unrecognised alarm registry header")
+                }
+                version = input.readByte()
+                if (version != VERSION && version != VERSION_V1) {
+                    throw IOException("Unrecognised alarm registry header")
+                }
+                while (true) {
+                    val op = try {
+                        input.readByte()
+                    } catch (_: EOFException) {
+                        break
+                    }
+                    try {
+                        when (op) {
+                            OP_PUT -> applyPut(input.readInt(), input.readInt())
+                            OP_REMOVE -> applyRemove(input.readInt())
+                            OP_HASH -> applyHash(input.readInt(), input.readInt())
+                            else -> {
+                                torn = true
+                                break
+                            }
+                        }
+                    } catch (_: EOFException) {
+                        // Interrupted append; keep what replayed and rewrite below.
+                        torn = true
+                        break
+                    }
+                    recordCount++
+                }
+            }
+        } catch (e: IOException) {
+            android.util.Log.w(TAG, "[AlarmRegistry] Discarding unreadable registry", e)
+            idToClass.clear()
+            classToIds.clear()
+            idToHash.clear()
+            torn = true
+        }
+        // Replay restores what was already there; it is not a change.
+        changedClasses.clear()
+        if (torn || version != VERSION) {
+            // v1 files replay as-is; rewrite so hash records land under a v2 header.
+            writeSnapshot()
+        }
+    }
+
+    private inline fun append(block: (DataOutputStream) -> Unit) {
+        block(pending)
+        pending.flush()
+        if (!deferWrites) flush()
+    }
+
+    private fun compactIfNeeded() {
+        val live = idToClass.size + idToHash.size
+        if (recordCount > COMPACT_MIN_RECORDS && recordCount > live * COMPACT_RATIO) {
+            writeSnapshot()
+        }
+    }
+
+    private fun writeSnapshot() {
+        val parent = file.parentFile
+        if (parent != null && !parent.exists()) parent.mkdirs()
+        val tmp = File(file.path + ".tmp")
+        try {
+            FileOutputStream(tmp).use { stream ->
+                val out = DataOutputStream(BufferedOutputStream(stream))
+                out.writeInt(MAGIC)
+                out.writeByte(VERSION.toInt())
+                for ((id, classId) in idToClass) {
+                    writePut(out, id, classId)
+                }
+                for ((id, hash) in idToHash) {
+                    writeHash(out, id, hash)
+                }
+                out.flush()
+                stream.fd.sync()
+            }
+            if (!tmp.renameTo(file)) {
+                throw IOException("Failed to replace ${file.name}")
+            }
+            // The snapshot already holds every buffered mutation.
+            pendingBytes.reset()
+            recordCount = idToClass.size + idToHash.size
+        } catch (e: IOException) {
+            android.util.Log.e(TAG, "[AlarmRegistry] Snapshot failed", e)
+            tmp.delete()
+        }
+    }
+
+    private fun writePut(out: DataOutputStream, id: Int, classId: Int) {
+        out.writeByte(OP_PUT.toInt())
+        out.writeInt(id)
+        out.writeInt(classId)
+        recordCount++
+    }
+
+    private fun writeHash(out: DataOutputStream, id: Int, hash: Int) {
+        out.writeByte(OP_HASH.toInt())
+        out.writeInt(id)
+        out.writeInt(hash)
+        recordCount++
+    }
+
+    private fun writeRemove(out: DataOutputStream, id: Int) {
+        out.writeByte(OP_REMOVE.toInt())
+        out.writeInt(id)
+        recordCount++
+    }
+
+    companion object {
+        const val NO_CLASS = -1
+        const val NO_HASH = 0
+
+        private const val TAG = "MySched"
+        private const val MAGIC = 0x4D534152 // "MSAR"
+        private const val VERSION: Byte = 2
+        private const val VERSION_V1: Byte = 1
+        private const val OP_PUT: Byte = 1
+        private const val OP_REMOVE: Byte = 2
+        private const val OP_HASH: Byte = 3
+        private const val COMPACT_MIN_RECORDS = 256
+        private const val COMPACT_RATIO = 4
+    }
+}
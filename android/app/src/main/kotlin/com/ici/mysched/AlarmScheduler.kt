@@ -0,0 +1,334 @@
+package com.ici.mysched
+
+import android.app.AlarmManager
+import android.app.PendingIntent
+import android.content.Context
+import android.content.Intent
+import android.os.Build
+import android.os.SystemClock
+
+/**
+ * Arms and cancels native alarms. Single and batch entry points share the
+ * same AlarmManager calls; batches commit their bookkeeping once.
+ */
+object AlarmScheduler {
+    private const val TAG = "MySched"
+    private val DISARM_RECEIVERS = arrayOf(AlarmReceiver::class.java, HeadsUpReceiver::class.java)
+
+    @JvmStatic
+    fun schedule(context: Context, spec: AlarmSpec) {
+        arm(context, alarmManager(context), spec)
+        AlarmStore.trackArmed(context, listOf(spec))
+    }
+
+    /**
+     * Arms every spec in one pass and records the successful ones with a
+     * single registry append. Returns id -> armed.
+     */
+    @JvmStatic
+    fun scheduleBatch(context: Context, specs: List<AlarmSpec>): Map<Int, Boolean> {
+        val am = alarmManager(context)
+        val results = LinkedHashMap<Int, Boolean>(specs.size)
+        val armed = ArrayList<AlarmSpec>(specs.size)
+        for (spec in specs) {
+            val ok = try {
+                arm(context, am, spec)
+                true
+            } catch (e: Exception) {
+                android.util.Log.e(TAG, "[AlarmScheduler] Failed to arm ${spec.id}", e)
+                false
+            }
+            results[spec.id] = ok
+            if (ok) armed.add(spec)
+        }
+        if (armed.isNotEmpty()) {
+            AlarmStore.trackArmed(context, armed)
+            AlarmPrefsHelper.clearOccurrences(
+                context,
+                armed.map { it.classId to it.occurrenceKey }.distinct(),
+            )
+        }
+        return results
+    }
+
+    @JvmStatic
+    fun cancel(context: Context, id: Int) {
+        disarm(context, alarmManager(context), id)
+        AlarmStore.forgetAlarmId(context, id)
+    }
+
+    @JvmStatic
+    fun cancelBatch(context: Context, ids: Collection<Int>): Int {
+        val am = alarmManager(context)
+        for (id in ids) {
+            try {
+                disarm(context, am, id)
+            } catch (e: Exception) {
+                android.util.Log.e(TAG, "[AlarmScheduler] Failed to cancel $id", e)
+            }
+        }
+        return AlarmStore.forgetAll(context, ids)
+    }
+
+    /**
+     * Whether the PendingIntent for [spec] still exists (no AlarmManager
+     * call). A chained heads-up also counts as armed once its chain has
+     * moved on to the full-screen alarm.
+     */
+    @JvmStatic
+    fun isArmed(context: Context, spec: AlarmSpec): Boolean {
+        if (hasPendingIntent(context, spec.id, receiverFor(spec))) return true
+        return spec.isChained && hasPendingIntent(context, spec.id, AlarmReceiver::class.java)
+    }
+
+    private fun receiverFor(spec: AlarmSpec): Class<*> {
+        return if (spec.headsUpOnly || spec.isChained) HeadsUpReceiver::class.java else AlarmReceiver::class.java
+    }
+
+    /**
+     * Second link of a chained heads-up: arms the full-screen alarm for
+     * [payload]'s chain time under the same id and swaps the persisted
+     * payload for it, so a reboot in the remaining minute restores the
+     * alarm rather than the spent heads-up. If exact alarms are no longer
+     * allowed, an inexact while-idle alarm is used instead; a chain that
+     * breaks before this point is caught by [rearmPayloads].
+     */
+    @JvmStatic
+    fun continueChain(context: Context, payload: AlarmPayload): Boolean {
+        val next = payload.chainTarget()
+        val am = alarmManager(context)
+        val ok = try {
+            AlarmDispatcher.setAlarmClock(context, next)
+            true
+        } catch (e: SecurityException) {
+            android.util.Log.w(TAG, "[AlarmScheduler] Exact alarm denied for chain ${next.requestCode}", e)
+            try {
+                val pi = AlarmDispatcher.alarmPendingIntent(context, AlarmReceiver::class.java, next)
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+                    am.setAndAllowWhileIdle(AlarmManager.RTC_WAKEUP, next.atMillis, pi)
+                } else {
+                    am.set(AlarmManager.RTC_WAKEUP, next.atMillis, pi)
+                }
+                true
+            } catch (e2: Exception) {
+                android.util.Log.e(TAG, "[AlarmScheduler] Failed to continue chain ${next.requestCode}", e2)
+                false
+            }
+        }
+        // The spent heads-up PendingIntent would otherwise keep isArmed true.
+        PendingIntent.getBroadcast(
+            context,
+            payload.requestCode,
+            Intent(context, HeadsUpReceiver::class.java),
+            PendingIntent.FLAG_NO_CREATE or pendingIntentImmutableFlag()
+        )?.cancel()
+        if (!ok) {
+            AlarmStore.forgetAlarmId(context, payload.requestCode)
+            return false
+        }
+        val stored = AlarmStore.payloads(context).get(payload.requestCode)
+        if (stored != null && stored.isChained) {
+            AlarmStore.trackArmed(context, listOf(stored.chainTarget()))
+        }
+        return true
+    }
+
+    class RestoreResult(
+        val restored: Int,
+        val alreadyArmed: Int,
+        val expired: Int,
+        val failed: Int,
+        val untracked: Int,
+        val elapsedMs: Double,
+    )
+
+    /**
+     * Re-arms every persisted payload whose trigger time is still ahead,
+     * straight from [AlarmStore.payloads]; no Flutter engine is involved.
+     * Expired payloads are forgotten. [RestoreResult.untracked] counts
+     * registry ids with no payload (armed by builds that did not persist
+     * one), which only the app can rebuild. Blocks on disk, so call it
+     * off the main thread.
+     */
+    @JvmStatic
+    @JvmOverloads
+    fun restore(context: Context, now: Long = System.currentTimeMillis()): RestoreResult {
+        val started = SystemClock.elapsedRealtimeNanos()
+        val pass = rearmPayloads(context, now)
+        if (pass.expired.isNotEmpty()) {
+            AlarmStore.forgetAll(context, pass.expired)
+        }
+        AlarmStore.flush(context)
+
+        val elapsedMs = (SystemClock.elapsedRealtimeNanos() - started) / 1_000_000.0
+        android.util.Log.i(
+            TAG,
+            "[AlarmScheduler] Restored ${pass.restored} alarms (already armed=${pass.alreadyArmed} " +
+                "expired=${pass.expired.size} failed=${pass.failed} untracked=${pass.untracked}) in " +
+                String.format(java.util.Locale.US, "%.1f", elapsedMs) + "ms"
+        )
+        return RestoreResult(
+            pass.restored,
+            pass.alreadyArmed,
+            pass.expired.size,
+            pass.failed,
+            pass.untracked,
+            elapsedMs,
+        )
+    }
+
+    internal class RearmPass(
+        val restored: Int,
+        val alreadyArmed: Int,
+        val expired: List<Int>,
+        val failed: Int,
+        val untracked: Int,
+    )
+
+    /**
+     * Arms every persisted payload that is due after [now] and has lost its
+     * PendingIntent. Expired ids are returned, not forgotten, so callers can
+     * fold them into their own bookkeeping write.
+     */
+    internal fun rearmPayloads(context: Context, now: Long): RearmPass {
+        val payloads = AlarmStore.payloads(context).all()
+        val payloadIds = payloads.mapTo(HashSet(payloads.size)) { it.id }
+        val untracked = AlarmStore.getRememberedAlarmIds(context).count { it !in payloadIds }
+
+        val expired = ArrayList<Int>()
+        val pending = ArrayList<AlarmSpec>(payloads.size)
+        var alreadyArmed = 0
+        val continuedIds = HashSet<Int>()
+        for (stored in payloads) {
+            // A chained heads-up that was missed (e.g. powered off) still
+            // owes its full-screen alarm.
+            val spec = stored.dueAfter(now)
+            when {
+                spec == null -> expired.add(stored.id)
+                isArmed(context, spec) -> alreadyArmed++
+                else -> {
+                    pending.add(spec)
+                    if (spec !== stored) continuedIds.add(spec.id)
+                }
+            }
+        }
+
+        // Acks are left alone: the occurrences were armed (and cleared) before.
+        val am = alarmManager(context)
+        var restored = 0
+        var failed = 0
+        val continued = ArrayList<AlarmSpec>()
+        for (spec in pending) {
+            try {
+                arm(context, am, spec)
+                restored++
+                if (spec.id in continuedIds) continued.add(spec)
+            } catch (e: Exception) {
+                android.util.Log.e(TAG, "[AlarmScheduler] Failed to restore ${spec.id}", e)
+                failed++
+            }
+        }
+        if (continued.isNotEmpty()) AlarmStore.trackArmed(context, continued)
+        return RearmPass(restored, alreadyArmed, expired, failed, untracked)
+    }
+
+    /** Whether any alarm receiver still holds a PendingIntent for [requestCode]. */
+    @JvmStatic
+    fun hasPendingIntent(context: Context, requestCode: Int): Boolean {
+        return DISARM_RECEIVERS.any { hasPendingIntent(context, requestCode, it) }
+    }
+
+    private fun hasPendingIntent(context: Context, requestCode: Int, receiver: Class<*>): Boolean {
+        return PendingIntent.getBroadcast(
+            context,
+            requestCode,
+            Intent(context, receiver),
+            PendingIntent.FLAG_NO_CREATE or pendingIntentImmutableFlag()
+        ) != null
+    }
+
+    class CancelAllResult(val tracked: Int, val cancelled: Int, val elapsedMs: Double) {
+        fun toMap(): Map<String, Any> = mapOf(
+            "tracked" to tracked,
+            "cancelled" to cancelled,
+            "elapsedMs" to elapsedMs,
+        )
+    }
+
+    /**
+     * Cancels every tracked alarm in one pass, then clears all bookkeeping
+     * with a single registry snapshot and prefs commit. Blocks on disk, so
+     * call it off the main thread.
+     */
+    @JvmStatic
+    fun cancelAll(context: Context): CancelAllResult {
+        val started = SystemClock.elapsedRealtimeNanos()
+        val am = alarmManager(context)
+        val ids = AlarmStore.getRememberedAlarmIds(context)
+        var cancelled = 0
+        for (id in ids) {
+            try {
+                if (disarm(context, am, id)) cancelled++
+            } catch (e: Exception) {
+                android.util.Log.e(TAG, "[AlarmScheduler] Failed to cancel $id", e)
+            }
+        }
+        AlarmWindow.cancelSentinel(context)
+        AlarmStore.clearAll(context)
+        val elapsedMs = (SystemClock.elapsedRealtimeNanos() - started) / 1_000_000.0
+        android.util.Log.i(
+            TAG,
+            "[AlarmScheduler] Cancelled $cancelled of ${ids.size} alarms in " +
+                String.format(java.util.Locale.US, "%.1f", elapsedMs) + "ms"
+        )
+        return CancelAllResult(ids.size, cancelled, elapsedMs)
+    }
+
+    private fun arm(context: Context, am: AlarmManager, spec: AlarmSpec) {
+        val broadcastPi = AlarmDispatcher.alarmPendingIntent(
+            context,
+            receiverFor(spec),
+            AlarmPayload.of(spec)
+        )
+        if (spec.headsUpOnly && !spec.isChained) {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+                am.setExactAndAllowWhileIdle(AlarmManager.RTC_WAKEUP, spec.atMillis, broadcastPi)
+            } else {
+                am.setExact(AlarmManager.RTC_WAKEUP, spec.atMillis, broadcastPi)
+            }
+        } else {
+            // Chained heads-ups use an alarm clock too: idle rate limits on
+            // while-idle alarms must not delay the alarm they lead into.
+            val info = AlarmManager.AlarmClockInfo(spec.atMillis, broadcastPi)
+            am.setAlarmClock(info, broadcastPi)
+        }
+    }
+
+    /** Cancels every receiver holding [requestCode]; returns false if none did. */
+    private fun disarm(context: Context, am: AlarmManager, requestCode: Int): Boolean {
+        // A chained heads-up and its full-screen alarm share one id, so
+        // both receivers can hold this code at once.
+        var disarmed = false
+        for (receiver in DISARM_RECEIVERS) {
+            val pi = PendingIntent.getBroadcast(
+                context,
+                requestCode,
+                Intent(context, receiver),
+                PendingIntent.FLAG_NO_CREATE or pendingIntentImmutableFlag()
+            ) ?: continue
+            am.cancel(pi)
+            pi.cancel()
+            disarmed = true
+        }
+        return disarmed
+    }
+
+    private fun alarmManager(context: Context): AlarmManager {
+        return context.getSystemService(Context.ALARM_SERVICE) as AlarmManager
+    }
+
+    @JvmStatic
+    fun pendingIntentImmutableFlag(): Int {
+        return if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) PendingIntent.FLAG_IMMUTABLE else 0
+    }
+}
@@ -0,0 +1,65 @@
+package com.ici.mysched
+
+/**
+ * One alarm as sent over `mysched/native_alarm`. [hash] is the Dart-side
+ * content hash of the fields above, or [AlarmRegistry.NO_HASH] if absent.
+ *
+ * A non-zero [chainAtMillis] makes this a chained heads-up: only the
+ * heads-up at [atMillis] is registered, and [HeadsUpReceiver] arms the
+ * full-screen alarm for [chainAtMillis] under the same id when it fires.
+ */
+data class AlarmSpec(
+    val id: Int,
+    val atMillis: Long,
+    val title: String,
+    val body: String,
+    val classId: Int,
+    val occurrenceKey: String,
+    val subject: String?,
+    val room: String?,
+    val startTime: String?,
+    val endTime: String?,
+    val headsUpOnly: Boolean,
+    val hash: Int,
+    val chainAtMillis: Long = 0L,
+) {
+    val isChained: Boolean get() = chainAtMillis > 0L
+
+    /** The full-screen alarm a chained heads-up continues into. */
+    fun chainTarget(): AlarmSpec = copy(atMillis = chainAtMillis, headsUpOnly = false, chainAtMillis = 0L)
+
+    /**
+     * This spec if it still fires after [now]; for a chained heads-up that
+     * has passed, its [chainTarget] if that is still ahead; otherwise null.
+     */
+    fun dueAfter(now: Long): AlarmSpec? = when {
+        atMillis > now -> this
+        isChained && chainAtMillis > now -> chainTarget()
+        else -> null
+    }
+
+    companion object {
+        @JvmStatic
+        fun fromMap(map: Map<*, *>): AlarmSpec {
+            val id = (map["id"] as? Number)?.toInt()
+                ?: throw IllegalArgumentException("id required")
+            val atMillis = (map["atMillis"] as? Number)?.toLong()
+                ?: throw IllegalArgumentException("atMillis required")
+            return AlarmSpec(
+                id = id,
+                atMillis = atMillis,
+                title = map["title"] as? String ?: "Alarm",
+                body = map["body"] as? String ?: "It's time!",
+                classId = (map["classId"] as? Number)?.toInt() ?: -1,
+                occurrenceKey = map["occurrenceKey"] as? String ?: "",
+                subject = map["subject"] as? String,
+                room = map["room"] as? String,
+                startTime = map["startTime"] as? String,
+                endTime = map["endTime"] as? String,
+                headsUpOnly = map["headsUpOnly"] as? Boolean ?: false,
+                hash = (map["hash"] as? Number)?.toInt() ?: AlarmRegistry.NO_HASH,
+                chainAtMillis = (map["chainAtMillis"] as? Number)?.toLong() ?: 0L,
+            )
+        }
+    }
+}
@@ -4,79 +4,145 @@ import android.content.Context
 import android.content.SharedPreferences
 import org.json.JSONArray
 import org.json.JSONObject
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicBoolean
 
 object AlarmStore {
     private const val PREFS_NAME = "com.example.mysched.alarms"
     private const val IDS_KEY = "ids"
+    private const val CLASS_KEY_PREFIX = "class_"
     private const val FLUTTER_PREFS = "FlutterSharedPreferences"
     private const val CLASS_MAP_KEY = "flutter.notif_class_schedule_map"
     private const val NATIVE_IDS_KEY = "flutter.scheduled_native_alarm_ids"
     private const val SNOOZE_MINUTES_KEY = "flutter.snoozeMinutes"
     private const val LEGACY_SNOOZE_KEY = "flutter.default_snooze_minutes"
+    private const val REGISTRY_FILE = "alarm_registry.bin"
+    private const val PAYLOAD_FILE = "alarm_payloads.bin"
+    private const val PLAN_FILE = "alarm_plan.bin"
+    private const val COMMIT_DELAY_MS = 250L
+
+    @Volatile
+    private var sharedRegistry: AlarmRegistry? = null
+    @Volatile
+    private var sharedPayloads: AlarmPayloadStore? = null
+    @Volatile
+    private var sharedPlan: AlarmPayloadStore? = null
+    private val commitPending = AtomicBoolean(false)
+    private val exportLock = Any()
+    private val commitExecutor = Executors.newSingleThreadScheduledExecutor { runnable ->
+        Thread(runnable, "AlarmStoreCommit").apply { isDaemon = true }
+    }
 
     @JvmStatic
     fun rememberAlarmId(context: Context, id: Int) {
-        val prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)
-        val current = prefs.getStringSet(IDS_KEY, mutableSetOf())?.toMutableSet()
-            ?: mutableSetOf()
-        current.add(id.toString())
-        prefs.edit().putStringSet(IDS_KEY, current).apply()
+        if (registry(context).add(id)) scheduleCommit(context)
     }
 
     @JvmStatic
     fun forgetAlarmId(context: Context, id: Int) {
-        val prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)
-        val current = prefs.getStringSet(IDS_KEY, mutableSetOf())?.toMutableSet()
-            ?: mutableSetOf()
-        if (current.remove(id.toString())) {
-            prefs.edit().putStringSet(IDS_KEY, current).apply()
-        }
+        val removed = registry(context).remove(id)
+        val dropped = payloads(context).remove(id)
+        if (plan(context).remove(id) || dropped || removed) scheduleCommit(context)
     }
 
     @JvmStatic
     fun getRememberedAlarmIds(context: Context): Set<Int> {
-        val prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)
-        val current = prefs.getStringSet(IDS_KEY, emptySet()) ?: emptySet()
-        return current.mapNotNull { it.toIntOrNull() }.toSet()
+        return registry(context).ids()
     }
 
     @JvmStatic
     fun addClassScheduleId(context: Context, classId: Int, id: Int) {
         if (classId == -1) return
-        val prefs = context.getSharedPreferences(FLUTTER_PREFS, Context.MODE_PRIVATE)
-        val root = readClassMap(prefs)
-        val key = classId.toString()
-        val set = root.optJSONArray(key)?.let { jsonArrayToSet(it) } ?: linkedSetOf()
-        if (set.add(id)) {
-            root.put(key, JSONArray(set.toList()))
-            prefs.edit().putString(CLASS_MAP_KEY, root.toString()).apply()
-        } else if (!root.has(key)) {
-            root.put(key, JSONArray(set.toList()))
-            prefs.edit().putString(CLASS_MAP_KEY, root.toString()).apply()
-        }
+        if (registry(context).add(id, classId)) scheduleCommit(context)
     }
 
     @JvmStatic
     fun removeClassScheduleId(context: Context, classId: Int, id: Int) {
         if (classId == -1) return
-        val prefs = context.getSharedPreferences(FLUTTER_PREFS, Context.MODE_PRIVATE)
-        val root = readClassMap(prefs)
-        val key = classId.toString()
-        if (!root.has(key)) return
-        val set = jsonArrayToSet(root.getJSONArray(key))
-        if (set.remove(id)) {
-            if (set.isEmpty()) {
-                root.remove(key)
-            } else {
-                root.put(key, JSONArray(set.toList()))
+        if (registry(context).unlinkClass(classId, id)) scheduleCommit(context)
+    }
+
+    /**
+     * Tracks [id] (and its class link, if any) with a single registry write.
+     * [hash] replaces the stored content hash; [AlarmRegistry.NO_HASH] clears it.
+     */
+    @JvmStatic
+    @JvmOverloads
+    fun track(context: Context, id: Int, classId: Int, hash: Int = AlarmRegistry.NO_HASH) {
+        trackAll(context, mapOf(id to classId), mapOf(id to hash))
+    }
+
+    /** Tracks every id -> classId entry (and its content hash) with a single registry write. */
+    @JvmStatic
+    @JvmOverloads
+    fun trackAll(context: Context, entries: Map<Int, Int>, hashes: Map<Int, Int>? = null) {
+        if (registry(context).addAll(entries, hashes) > 0) scheduleCommit(context)
+    }
+
+    /**
+     * Tracks armed alarms together with their full payloads so they can be
+     * re-armed after a reboot. One registry append and one payload snapshot.
+     */
+    @JvmStatic
+    fun trackArmed(context: Context, specs: Collection<AlarmSpec>) {
+        if (specs.isEmpty()) return
+        val changed = registry(context).addAll(
+            specs.associate { it.id to it.classId },
+            specs.associate { it.id to it.hash },
+        )
+        if (payloads(context).putAll(specs) > 0 || changed > 0) scheduleCommit(context)
+    }
+
+    /** Forgets every id in [ids] with a single registry write. */
+    @JvmStatic
+    fun forgetAll(context: Context, ids: Collection<Int>): Int {
+        val removed = registry(context).removeAll(ids)
+        val dropped = payloads(context).removeAll(ids) + plan(context).removeAll(ids)
+        if (removed > 0 || dropped > 0) scheduleCommit(context)
+        return removed
+    }
+
+    /** Forgets every tracked id and commits the empty state immediately. */
+    @JvmStatic
+    fun clearAll(context: Context) {
+        registry(context).clear()
+        payloads(context).clear()
+        plan(context).clear()
+        flush(context)
+    }
+
+    /**
+     * Writes buffered registry records, acks, and the compatibility view now,
+     * on the calling thread. Call before a receiver's `PendingResult.finish()`.
+     */
+    @JvmStatic
+    fun flush(context: Context) {
+        val appContext = context.applicationContext ?: context
+        commitPending.set(false)
+        commit(appContext, synchronous = true)
+    }
+
+    /**
+     * Runs [flush] on the commit thread, then [onDone]. Pairs with
+     * `goAsync()` so receivers do not block the main thread on disk.
+     */
+    @JvmStatic
+    @JvmOverloads
+    fun flushAsync(context: Context, onDone: Runnable? = null) {
+        val appContext = context.applicationContext ?: context
+        commitExecutor.execute {
+            try {
+                flush(appContext)
+            } finally {
+                onDone?.run()
             }
-            prefs.edit().putString(CLASS_MAP_KEY, root.toString()).apply()
         }
     }
 
     @JvmStatic
     fun readSnoozeMinutes(context: Context): Int {
-        val prefs = context.getSharedPreferences(FLUTTER_PREFS, Context.MODE_PRIVATE)
+        val prefs = DirectBoot.settings(context)
         val configured = readPositiveInt(prefs, SNOOZE_MINUTES_KEY)
         if (configured != null) return configured
         val legacy = readPositiveInt(prefs, LEGACY_SNOOZE_KEY)
@@ -91,26 +157,163 @@ object AlarmStore {
 
     @JvmStatic
     fun addNativeId(context: Context, id: Int) {
-        val prefs = context.getSharedPreferences(FLUTTER_PREFS, Context.MODE_PRIVATE)
-        val list = readNativeIdList(prefs)
-        val idString = id.toString()
-        if (!list.contains(idString)) {
-            list.add(idString)
-            prefs.edit().putString(NATIVE_IDS_KEY, JSONArray(list).toString()).apply()
-        }
+        rememberAlarmId(context, id)
     }
 
     @JvmStatic
     fun removeNativeId(context: Context, id: Int) {
-        val prefs = context.getSharedPreferences(FLUTTER_PREFS, Context.MODE_PRIVATE)
-        val list = readNativeIdList(prefs)
-        val idString = id.toString()
-        if (list.remove(idString)) {
-            if (list.isEmpty()) {
-                prefs.edit().remove(NATIVE_IDS_KEY).apply()
-            } else {
-                prefs.edit().putString(NATIVE_IDS_KEY, JSONArray(list).toString()).apply()
+        forgetAlarmId(context, id)
+    }
+
+    /**
+     * Shared registry instance. On first use the legacy JSON/string-set
+     * stores are imported so alarms armed by older builds stay tracked.
+     */
+    @JvmStatic
+    fun registry(context: Context): AlarmRegistry {
+        sharedRegistry?.let { return it }
+        synchronized(this) {
+            sharedRegistry?.let { return it }
+            val appContext = context.applicationContext ?: context
+            val created = AlarmRegistry(
+                DirectBoot.noBackupFile(appContext, REGISTRY_FILE),
+                deferWrites = true,
+            )
+            if (created.size() == 0 && created.createdFresh && DirectBoot.isUnlocked(appContext)) {
+                importLegacyIds(appContext, created)
+            }
+            sharedRegistry = created
+            return created
+        }
+    }
+
+    /** Shared payload store backing [AlarmScheduler.restore]. */
+    @JvmStatic
+    fun payloads(context: Context): AlarmPayloadStore {
+        sharedPayloads?.let { return it }
+        synchronized(this) {
+            sharedPayloads?.let { return it }
+            val appContext = context.applicationContext ?: context
+            val created = AlarmPayloadStore(DirectBoot.noBackupFile(appContext, PAYLOAD_FILE))
+            sharedPayloads = created
+            return created
+        }
+    }
+
+    /**
+     * Full future plan for windowed arming (see [AlarmWindow]). Holds every
+     * planned alarm, armed or not; empty when windowing is off.
+     */
+    @JvmStatic
+    fun plan(context: Context): AlarmPayloadStore {
+        sharedPlan?.let { return it }
+        synchronized(this) {
+            sharedPlan?.let { return it }
+            val appContext = context.applicationContext ?: context
+            val created = AlarmPayloadStore(DirectBoot.noBackupFile(appContext, PLAN_FILE))
+            sharedPlan = created
+            return created
+        }
+    }
+
+    /** Replaces the windowed plan; the write rides on the next commit. */
+    @JvmStatic
+    fun replacePlan(context: Context, specs: Collection<AlarmSpec>) {
+        if (plan(context).replaceAll(specs)) scheduleCommit(context)
+    }
+
+    private fun importLegacyIds(context: Context, target: AlarmRegistry) {
+        val entries = LinkedHashMap<Int, Int>()
+        val prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)
+        prefs.getStringSet(IDS_KEY, emptySet())?.forEach { raw ->
+            raw.toIntOrNull()?.let { entries[it] = AlarmRegistry.NO_CLASS }
+        }
+        for ((key, value) in prefs.all) {
+            if (!key.startsWith(CLASS_KEY_PREFIX) || value !is String) continue
+            val classId = key.removePrefix(CLASS_KEY_PREFIX).toIntOrNull() ?: continue
+            val ids = try {
+                jsonArrayToSet(JSONArray(value))
+            } catch (_: Exception) {
+                continue
+            }
+            ids.forEach { entries[it] = classId }
+        }
+        val flutterPrefs = context.getSharedPreferences(FLUTTER_PREFS, Context.MODE_PRIVATE)
+        readNativeIdList(flutterPrefs).forEach { raw ->
+            raw.toIntOrNull()?.let { entries.putIfAbsent(it, AlarmRegistry.NO_CLASS) }
+        }
+        val classMap = readClassMap(flutterPrefs)
+        for (key in classMap.keys()) {
+            val classId = key.toIntOrNull() ?: continue
+            val array = classMap.optJSONArray(key) ?: continue
+            jsonArrayToSet(array).forEach { entries[it] = classId }
+        }
+        if (entries.isNotEmpty()) {
+            target.addAll(entries)
+            target.flush()
+        }
+        // The registry replaces the legacy id set; class keys stay as the export.
+        if (prefs.contains(IDS_KEY)) prefs.edit().remove(IDS_KEY).apply()
+    }
+
+    /** Schedules the coalesced commit for stores flushed alongside the registry, such as acks. */
+    @JvmStatic
+    fun scheduleFlush(context: Context) {
+        scheduleCommit(context)
+    }
+
+    /**
+     * Registry state is updated in memory under its lock; disk work is
+     * deferred. Mutations that land within [COMMIT_DELAY_MS] of each other
+     * share one registry append and one compatibility export.
+     */
+    private fun scheduleCommit(context: Context) {
+        if (!commitPending.compareAndSet(false, true)) return
+        val appContext = context.applicationContext ?: context
+        commitExecutor.schedule({
+            if (commitPending.compareAndSet(true, false)) {
+                commit(appContext, synchronous = false)
+            }
+        }, COMMIT_DELAY_MS, TimeUnit.MILLISECONDS)
+    }
+
+    private fun commit(context: Context, synchronous: Boolean) {
+        try {
+            registry(context).flush()
+            payloads(context).flush()
+            plan(context).flush()
+            AlarmPrefsHelper.flushAcks()
+            // The legacy prefs are credential-encrypted; a locked commit leaves
+            // the class changes for the first commit after unlock.
+            if (DirectBoot.isUnlocked(context)) {
+                exportCompatibilityView(context, synchronous)
+            }
+        } catch (e: Exception) {
+            android.util.Log.e("MySched", "[AlarmStore] Commit failed", e)
+        }
+    }
+
+    /**
+     * Mirrors each class whose ids changed into the native alarm prefs as
+     * `class_<classId>`, so a commit costs the classes it touched rather
+     * than the whole registry. The Flutter prefs are left to the Dart side:
+     * it writes those keys from its own cache, so a read-modify-write from
+     * the commit thread could lose its update.
+     */
+    private fun exportCompatibilityView(context: Context, synchronous: Boolean) {
+        synchronized(exportLock) {
+            val changes = registry(context).takeClassChanges()
+            if (changes.isEmpty()) return
+            val editor = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE).edit()
+            for ((classId, ids) in changes) {
+                val key = CLASS_KEY_PREFIX + classId
+                if (ids.isEmpty()) {
+                    editor.remove(key)
+                } else {
+                    editor.putString(key, JSONArray(ids.toList()).toString())
+                }
             }
+            if (synchronous) editor.commit() else editor.apply()
         }
     }
 
@@ -0,0 +1,279 @@
+package com.ici.mysched
+
+import android.content.Context
+import android.content.SharedPreferences
+import android.media.AudioFormat
+import android.media.MediaCodec
+import android.media.MediaExtractor
+import android.media.MediaFormat
+import android.media.RingtoneManager
+import android.net.Uri
+import android.os.SystemClock
+import java.io.BufferedOutputStream
+import java.io.ByteArrayOutputStream
+import java.io.DataOutputStream
+import java.io.File
+import java.io.FileOutputStream
+import java.io.IOException
+import java.io.RandomAccessFile
+import java.util.concurrent.Executors
+import java.util.concurrent.atomic.AtomicBoolean
+
+/**
+ * Pre-decoded copy of the selected alarm ringtone.
+ *
+ * Whenever `flutter.alarm_ringtone` changes, the ringtone is decoded to
+ * 16-bit PCM on a worker thread and written to `no_backup/alarm_tone.pcm`
+ * (at most [MAX_SECONDS]; playback loops it). [AlarmTonePlayer] streams the
+ * file straight into an AudioTrack, so nothing is decoded or prepared when
+ * the alarm fires. The file is in device-protected storage (see
+ * [DirectBoot]), so the tone also plays before first unlock. Ringtones that cannot be decoded fall back to MediaPlayer.
+ *
+ * File layout: `magic:i32 version:u8 sampleRate:i32 channels:i32 source:utf
+ * length:i32` followed by `length` bytes of interleaved PCM.
+ */
+object AlarmToneCache {
+    private const val TAG = "MySched"
+    private const val FILE_NAME = "alarm_tone.pcm"
+    private const val FLUTTER_PREFS = "FlutterSharedPreferences"
+    private const val RINGTONE_KEY = "flutter.alarm_ringtone"
+    private const val MAGIC = 0x4D53544E // "MSTN"
+    private const val VERSION: Byte = 1
+    private const val MAX_SECONDS = 20
+    private const val TIMEOUT_US = 10_000L
+
+    /** Decoded tone header; [dataOffset] is where PCM starts in [file]. */
+    class Tone(
+        val file: File,
+        val source: String,
+        val sampleRate: Int,
+        val channels: Int,
+        val dataOffset: Long,
+        val length: Int,
+    )
+
+    @Volatile
+    private var cached: Tone? = null
+    @Volatile
+    private var headerRead = false
+    private val refreshPending = AtomicBoolean(false)
+    private var listener: SharedPreferences.OnSharedPreferenceChangeListener? = null
+    private val executor = Executors.newSingleThreadExecutor { runnable ->
+        Thread(runnable, "AlarmToneCache").apply { isDaemon = true }
+    }
+
+    /**
+     * Re-decodes the tone whenever the ringtone setting changes, and once
+     * now if the cache does not match the current setting.
+     */
+    @JvmStatic
+    @Synchronized
+    fun watch(context: Context) {
+        val appContext = context.applicationContext ?: context
+        if (listener == null) {
+            val prefs = appContext.getSharedPreferences(FLUTTER_PREFS, Context.MODE_PRIVATE)
+            // Prefs hold listeners weakly; the field keeps this one alive.
+            val created = SharedPreferences.OnSharedPreferenceChangeListener { _, key ->
+                if (key == RINGTONE_KEY) refreshAsync(appContext)
+            }
+            prefs.registerOnSharedPreferenceChangeListener(created)
+            listener = created
+        }
+        refreshAsync(appContext)
+    }
+
+    /**
+     * The decoded tone for the current ringtone setting, or null when it has
+     * not been decoded yet (a refresh is then queued). Cheap enough for the
+     * main thread: the header is read once and kept in memory.
+     */
+    @JvmStatic
+    fun toneFor(context: Context, ringtone: String?): Tone? {
+        val source = resolveSource(context, ringtone)
+        val tone = loadHeader(context)
+        if (source != null && tone != null && tone.source == source && tone.file.exists()) {
+            return tone
+        }
+        refreshAsync(context)
+        return null
+    }
+
+    @JvmStatic
+    fun refreshAsync(context: Context) {
+        val appContext = context.applicationContext ?: context
+        if (!refreshPending.compareAndSet(false, true)) return
+        executor.execute {
+            refreshPending.set(false)
+            try {
+                refresh(appContext)
+            } catch (e: Exception) {
+                android.util.Log.w(TAG, "[AlarmToneCache] Refresh failed", e)
+            }
+        }
+    }
+
+    private fun refresh(context: Context) {
+        val prefs = DirectBoot.settings(context)
+        val source = resolveSource(context, prefs.getString(RINGTONE_KEY, null))
+        val file = DirectBoot.noBackupFile(context, FILE_NAME)
+        if (source == null) {
+            cached = null
+            file.delete()
+            return
+        }
+        if (loadHeader(context)?.source == source) return
+        val started = SystemClock.elapsedRealtimeNanos()
+        val tone = try {
+            decode(context, Uri.parse(source), source, file)
+        } catch (e: Exception) {
+            android.util.Log.w(TAG, "[AlarmToneCache] Cannot pre-decode $source; MediaPlayer will be used", e)
+            cached = null
+            file.delete()
+            return
+        }
+        cached = tone
+        android.util.Log.i(
+            TAG,
+            "[AlarmToneCache] Decoded ${tone.length / 1024}KB (${tone.sampleRate}Hz x${tone.channels}) in " +
+                (SystemClock.elapsedRealtimeNanos() - started) / 1_000_000 + "ms"
+        )
+    }
+
+    /** Setting value to the URI actually played; "default" follows the system alarm. */
+    private fun resolveSource(context: Context, ringtone: String?): String? {
+        if (ringtone != null && ringtone.isNotEmpty() && ringtone != "default") return ringtone
+        return try {
+            RingtoneManager.getActualDefaultRingtoneUri(context, RingtoneManager.TYPE_ALARM)?.toString()
+        } catch (_: Exception) {
+            null
+        }
+    }
+
+    private fun loadHeader(context: Context): Tone? {
+        if (headerRead) return cached
+        synchronized(this) {
+            if (headerRead) return cached
+            val file = DirectBoot.noBackupFile(context, FILE_NAME)
+            if (file.exists()) {
+                try {
+                    RandomAccessFile(file, "r").use { raf ->
+                        if (raf.readInt() != MAGIC || raf.readByte() != VERSION) {
+                            throw IOException("Unrecognised tone header")
+                        }
+                        val sampleRate = raf.readInt()
+                        val channels = raf.readInt()
+                        val source = raf.readUTF()
+                        val length = raf.readInt()
+                        cached = Tone(file, source, sampleRate, channels, raf.filePointer, length)
+                    }
+                } catch (e: IOException) {
+                    android.util.Log.w(TAG, "[AlarmToneCache] Discarding unreadable tone", e)
+                    file.delete()
+                }
+            }
+            headerRead = true
+            return cached
+        }
+    }
+
+    private fun decode(context: Context, uri: Uri, source: String, target: File): Tone {
+        val extractor = MediaExtractor()
+        var codec: MediaCodec? = null
+        try {
+            extractor.setDataSource(context, uri, null)
+            val track = (0 until extractor.trackCount).firstOrNull {
+                extractor.getTrackFormat(it).getString(MediaFormat.KEY_MIME)?.startsWith("audio/") == true
+            } ?: throw IOException("No audio track")
+            extractor.selectTrack(track)
+            val format = extractor.getTrackFormat(track)
+            var sampleRate = format.getInteger(MediaFormat.KEY_SAMPLE_RATE)
+            var channels = format.getInteger(MediaFormat.KEY_CHANNEL_COUNT)
+
+            val decoder = MediaCodec.createDecoderByType(format.getString(MediaFormat.KEY_MIME)!!)
+            codec = decoder
+            decoder.configure(format, null, null, 0)
+            decoder.start()
+
+            val pcm = ByteArrayOutputStream()
+            val info = MediaCodec.BufferInfo()
+            var inputDone = false
+            var outputDone = false
+            while (!outputDone) {
+                if (!inputDone) {
+                    val inIndex = decoder.dequeueInputBuffer(TIMEOUT_US)
+                    if (inIndex >= 0) {
+                        val buffer = decoder.getInputBuffer(inIndex)!!
+                        val size = extractor.readSampleData(buffer, 0)
+                        if (size < 0) {
+                            decoder.queueInputBuffer(inIndex, 0, 0, 0, MediaCodec.BUFFER_FLAG_END_OF_STREAM)
+                            inputDone = true
+                        } else {
+                            decoder.queueInputBuffer(inIndex, 0, size, extractor.sampleTime, 0)
+                            extractor.advance()
+                        }
+                    }
+                }
+                val outIndex = decoder.dequeueOutputBuffer(info, TIMEOUT_US)
+                if (outIndex == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+                    val outFormat = decoder.outputFormat
+                    sampleRate = outFormat.getInteger(MediaFormat.KEY_SAMPLE_RATE)
+                    channels = outFormat.getInteger(MediaFormat.KEY_CHANNEL_COUNT)
+                    if (outFormat.containsKey(MediaFormat.KEY_PCM_ENCODING) &&
+                        outFormat.getInteger(MediaFormat.KEY_PCM_ENCODING) != AudioFormat.ENCODING_PCM_16BIT
+                    ) {
+                        throw IOException("Decoder output is not 16-bit PCM")
+                    }
+                } else if (outIndex >= 0) {
+                    if (info.size > 0) {
+                        val buffer = decoder.getOutputBuffer(outIndex)!!
+                        val chunk = ByteArray(info.size)
+                        buffer.position(info.offset)
+                        buffer.get(chunk)
+                        pcm.write(chunk)
+                    }
+                    decoder.releaseOutputBuffer(outIndex, false)
+                    val limit = sampleRate * channels * 2 * MAX_SECONDS
+                    if ((info.flags and MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0 || pcm.size() >= limit) {
+                        outputDone = true
+                    }
+                }
+            }
+            if (channels !in 1..2) throw IOException("Unsupported channel count $channels")
+            if (pcm.size() == 0) throw IOException("Empty decode")
+            return write(target, source, sampleRate, channels, pcm.toByteArray())
+        } finally {
+            try {
+                codec?.stop()
+            } catch (_: Exception) {
+                // already stopped or never started
+            }
+            codec?.release()
+            extractor.release()
+        }
+    }
+
+    private fun write(target: File, source: String, sampleRate: Int, channels: Int, pcm: ByteArray): Tone {
+        // Keep whole frames only.
+        val length = pcm.size - pcm.size % (channels * 2)
+        val tmp = File(target.path + ".tmp")
+        var dataOffset = 0L
+        FileOutputStream(tmp).use { stream ->
+            val out = DataOutputStream(BufferedOutputStream(stream))
+            out.writeInt(MAGIC)
+            out.writeByte(VERSION.toInt())
+            out.writeInt(sampleRate)
+            out.writeInt(channels)
+            out.writeUTF(source)
+            out.writeInt(length)
+            dataOffset = out.size().toLong()
+            out.write(pcm, 0, length)
+            out.flush()
+            stream.fd.sync()
+        }
+        if (!tmp.renameTo(target)) {
+            tmp.delete()
+            throw IOException("Failed to replace ${target.name}")
+        }
+        return Tone(target, source, sampleRate, channels, dataOffset, length)
+    }
+}
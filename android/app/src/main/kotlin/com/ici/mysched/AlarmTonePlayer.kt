@@ -0,0 +1,125 @@
+package com.ici.mysched
+
+import android.media.AudioAttributes
+import android.media.AudioFormat
+import android.media.AudioTrack
+import android.os.Build
+import android.os.Process
+import android.os.SystemClock
+import java.io.RandomAccessFile
+import java.nio.channels.FileChannel
+
+/**
+ * Loops a tone from [AlarmToneCache] through a low-latency streaming
+ * AudioTrack. Setup and playback run on a dedicated urgent-audio thread,
+ * so [start] returns immediately. If the track cannot be created or
+ * written, [onError] runs once (on the player thread) so the caller can
+ * fall back to MediaPlayer.
+ */
+class AlarmTonePlayer(
+    private val tone: AlarmToneCache.Tone,
+    private val volume: Float,
+    private val onError: Runnable? = null,
+) {
+    @Volatile
+    private var stopped = false
+    @Volatile
+    private var failed = false
+    private var thread: Thread? = null
+
+    fun start() {
+        val startedAt = SystemClock.elapsedRealtimeNanos()
+        thread = Thread({ play(startedAt) }, "AlarmTone").apply { start() }
+    }
+
+    /** True until [stop] is called or playback fails. */
+    fun isPlaying(): Boolean = !stopped && !failed
+
+    fun stop() {
+        stopped = true
+    }
+
+    private fun play(startedAt: Long) {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_URGENT_AUDIO)
+        var track: AudioTrack? = null
+        try {
+            RandomAccessFile(tone.file, "r").use { raf ->
+                val data = raf.channel.map(FileChannel.MapMode.READ_ONLY, tone.dataOffset, tone.length.toLong())
+                val channelMask = if (tone.channels == 1) {
+                    AudioFormat.CHANNEL_OUT_MONO
+                } else {
+                    AudioFormat.CHANNEL_OUT_STEREO
+                }
+                val minBuffer = AudioTrack.getMinBufferSize(
+                    tone.sampleRate,
+                    channelMask,
+                    AudioFormat.ENCODING_PCM_16BIT
+                )
+                if (minBuffer <= 0) throw IllegalStateException("Unsupported tone format")
+                val builder = AudioTrack.Builder()
+                    .setAudioAttributes(
+                        AudioAttributes.Builder()
+                            .setUsage(AudioAttributes.USAGE_ALARM)
+                            .setContentType(AudioAttributes.CONTENT_TYPE_SONIFICATION)
+                            .build()
+                    )
+                    .setAudioFormat(
+                        AudioFormat.Builder()
+                            .setSampleRate(tone.sampleRate)
+                            .setChannelMask(channelMask)
+                            .setEncoding(AudioFormat.ENCODING_PCM_16BIT)
+                            .build()
+                    )
+                    .setTransferMode(AudioTrack.MODE_STREAM)
+                    .setBufferSizeInBytes(minBuffer * 2)
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+                    builder.setPerformanceMode(AudioTrack.PERFORMANCE_MODE_LOW_LATENCY)
+                }
+                val created = builder.build()
+                track = created
+                created.setVolume(volume)
+                created.play()
+
+                val chunk = ByteArray(minBuffer)
+                var firstWrite = true
+                while (!stopped) {
+                    if (!data.hasRemaining()) data.rewind()
+                    val count = minOf(chunk.size, data.remaining())
+                    data.get(chunk, 0, count)
+                    var offset = 0
+                    while (offset < count && !stopped) {
+                        val written = created.write(chunk, offset, count - offset)
+                        if (written < 0) throw IllegalStateException("AudioTrack write failed: $written")
+                        offset += written
+                    }
+                    if (firstWrite) {
+                        firstWrite = false
+                        android.util.Log.d(
+                            TAG,
+                            "[AlarmTonePlayer] First buffer queued " +
+                                (SystemClock.elapsedRealtimeNanos() - startedAt) / 1_000_000 + "ms after start"
+                        )
+                    }
+                }
+            }
+        } catch (e: Exception) {
+            android.util.Log.e(TAG, "[AlarmTonePlayer] Playback failed", e)
+            failed = true
+            if (!stopped) onError?.run()
+        } finally {
+            track?.let {
+                try {
+                    it.pause()
+                    it.flush()
+                } catch (_: Exception) {
+                    // not playing
+                }
+                it.release()
+            }
+        }
+    }
+
+    private companion object {
+        const val TAG = "MySched"
+    }
+}
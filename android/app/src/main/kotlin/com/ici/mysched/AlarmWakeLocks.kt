@@ -0,0 +1,82 @@
+package com.ici.mysched
+
+import android.content.Context
+import android.os.PowerManager
+import android.os.SystemClock
+
+/**
+ * One partial wake lock per ringing alarm, shared by the fire-path stages.
+ *
+ * Each stage ([HOLDER_RECEIVER], [HOLDER_SERVICE], [HOLDER_ACTIVITY])
+ * registers as a holder of the alarm's lock. [handOff] takes the lock for
+ * the next stage and drops the earlier ones, and the lock is released as
+ * soon as no holder is left. Every lock also has a timeout, so a stage that
+ * never hands off cannot keep it forever. The time each lock was held goes
+ * to [AlarmLatency] as [AlarmLatency.STAGE_WAKE_HOLD].
+ */
+object AlarmWakeLocks {
+    private const val TAG = "MySched"
+
+    const val HOLDER_RECEIVER = 1
+    const val HOLDER_SERVICE = 1 shl 1
+    const val HOLDER_ACTIVITY = 1 shl 2
+
+    private class Hold(val lock: PowerManager.WakeLock, val acquiredAt: Long) {
+        var holders = 0
+        var deadline = 0L
+    }
+
+    private val holds = HashMap<Int, Hold>()
+
+    @JvmStatic
+    fun acquire(context: Context, alarmId: Int, holder: Int, timeoutMs: Long) {
+        synchronized(holds) {
+            val now = SystemClock.elapsedRealtime()
+            var hold = holds[alarmId]
+            if (hold == null) {
+                val pm = context.getSystemService(Context.POWER_SERVICE) as? PowerManager ?: return
+                val lock = pm.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, "MySched:Alarm")
+                lock.setReferenceCounted(false)
+                hold = Hold(lock, now)
+                holds[alarmId] = hold
+            }
+            hold.holders = hold.holders or holder
+            val deadline = now + timeoutMs
+            if (deadline > hold.deadline || !hold.lock.isHeld) {
+                // Re-acquiring a non-counted lock only moves its timeout.
+                hold.lock.acquire(timeoutMs)
+                hold.deadline = deadline
+            }
+        }
+    }
+
+    /** Takes the lock for [holder] and releases it for every other stage. */
+    @JvmStatic
+    fun handOff(context: Context, alarmId: Int, holder: Int, timeoutMs: Long) {
+        acquire(context, alarmId, holder, timeoutMs)
+        release(context, alarmId, holder.inv())
+    }
+
+    /** Drops [holders] (a mask) from [alarmId]; releases the lock when none remain. */
+    @JvmStatic
+    fun release(context: Context, alarmId: Int, holders: Int) {
+        val released = synchronized(holds) {
+            val hold = holds[alarmId] ?: return
+            hold.holders = hold.holders and holders.inv()
+            if (hold.holders != 0) return
+            holds.remove(alarmId)
+            if (hold.lock.isHeld) hold.lock.release()
+            hold
+        }
+        val heldMs = minOf(SystemClock.elapsedRealtime(), released.deadline) - released.acquiredAt
+        AlarmLatency.recordDuration(context, AlarmLatency.STAGE_WAKE_HOLD, heldMs)
+        android.util.Log.d(TAG, "[AlarmWakeLocks] Released wake lock for $alarmId after ${heldMs}ms")
+    }
+
+    /** Drops [holder] from every alarm, e.g. when the service is destroyed. */
+    @JvmStatic
+    fun releaseAll(context: Context, holder: Int) {
+        val ids = synchronized(holds) { holds.keys.toIntArray() }
+        for (id in ids) release(context, id, holder)
+    }
+}
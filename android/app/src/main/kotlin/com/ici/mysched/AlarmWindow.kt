@@ -0,0 +1,179 @@
+package com.ici.mysched
+
+import android.app.AlarmManager
+import android.app.PendingIntent
+import android.content.Context
+import android.content.Intent
+import android.os.Build
+
+/**
+ * Rolling-window arming.
+ *
+ * The full plan is persisted in [AlarmStore.plan], but only the earliest
+ * [windowSize] alarms are armed. One inexact sentinel alarm fires once
+ * half the window has been used. [AlarmRefillReceiver] then calls [refill],
+ * which reconciles the next window from the persisted plan. AlarmManager
+ * holds at most `windowSize + 1` registrations whatever the plan size.
+ */
+object AlarmWindow {
+    private const val TAG = "MySched"
+    private const val PREFS_NAME = "com.example.mysched.alarms"
+    private const val WINDOW_SIZE_KEY = "window_size"
+    private const val SENTINEL_REQUEST_CODE = 0x4D53_0B01
+
+    /**
+     * Reconciles [desired] through the window. With [windowSize] <= 0 the
+     * window is turned off: the plan is dropped, the sentinel cancelled, and
+     * [desired] is reconciled as-is.
+     */
+    @JvmStatic
+    @Synchronized
+    fun reconcile(
+        context: Context,
+        desired: List<AlarmSpec>,
+        owned: Collection<Int>,
+        windowSize: Int,
+        now: Long = System.currentTimeMillis(),
+    ): Map<String, Any> {
+        storeWindowSize(context, windowSize)
+        if (windowSize <= 0) {
+            cancelSentinel(context)
+            AlarmStore.replacePlan(context, emptyList())
+            val outcome = AlarmReconciler.reconcile(context, desired, owned)
+            return outcome.toMap() + mapOf(
+                "active" to activeIds(desired, outcome),
+                "deferred" to 0,
+            )
+        }
+        val future = desired.mapNotNull { it.dueAfter(now) }.sortedBy { it.atMillis }
+        val window = future.take(windowSize)
+        // Stale ids are forgotten (and dropped from the plan) first, so the
+        // new plan must be written after reconciling.
+        val outcome = AlarmReconciler.reconcile(context, window, owned)
+        AlarmStore.replacePlan(context, future)
+        armSentinel(context, window, future.size)
+        return outcome.toMap() + mapOf(
+            "active" to activeIds(window, outcome),
+            "deferred" to future.size - window.size,
+        )
+    }
+
+    /**
+     * Arms the next window from the persisted plan, dropping occurrences
+     * that have passed. No-op when windowing is off. Blocks on disk, so call
+     * it off the main thread.
+     */
+    @JvmStatic
+    @JvmOverloads
+    @Synchronized
+    fun refill(context: Context, now: Long = System.currentTimeMillis()): Int {
+        val windowSize = readWindowSize(context)
+        if (windowSize <= 0) return 0
+        val plan = AlarmStore.plan(context).all()
+        if (plan.isEmpty()) {
+            cancelSentinel(context)
+            return 0
+        }
+        val future = plan.mapNotNull { it.dueAfter(now) }.sortedBy { it.atMillis }
+        val window = future.take(windowSize)
+        val outcome = AlarmReconciler.reconcile(context, window, emptyList())
+        // Passed occurrences drop out; missed chained heads-ups become alarms.
+        AlarmStore.replacePlan(context, future)
+        armSentinel(context, window, future.size)
+        AlarmStore.flush(context)
+        android.util.Log.i(
+            TAG,
+            "[AlarmWindow] Refilled window: armed=${outcome.armed.size} " +
+                "unchanged=${outcome.unchanged} deferred=${future.size - window.size}"
+        )
+        return outcome.armed.size
+    }
+
+    /**
+     * Applies one class's changes to the persisted plan: [removed] ids are
+     * dropped and [upserts] replace their entries. The window is then
+     * reconciled as in [refill], so unchanged alarms cost no AlarmManager
+     * calls. Returns null when windowing is off; there is no plan to patch
+     * and the caller must reconcile the full set instead.
+     */
+    @JvmStatic
+    @JvmOverloads
+    @Synchronized
+    fun applyDelta(
+        context: Context,
+        upserts: List<AlarmSpec>,
+        removed: Collection<Int>,
+        now: Long = System.currentTimeMillis(),
+    ): Map<String, Any>? {
+        val windowSize = readWindowSize(context)
+        if (windowSize <= 0) return null
+        val plan = LinkedHashMap<Int, AlarmSpec>()
+        AlarmStore.plan(context).all().forEach { plan[it.id] = it }
+        removed.forEach { plan.remove(it) }
+        upserts.forEach { plan[it.id] = it }
+        val future = plan.values.mapNotNull { it.dueAfter(now) }.sortedBy { it.atMillis }
+        val window = future.take(windowSize)
+        val outcome = AlarmReconciler.reconcile(context, window, removed)
+        AlarmStore.replacePlan(context, future)
+        armSentinel(context, window, future.size)
+        return outcome.toMap() + mapOf(
+            "active" to activeIds(window, outcome),
+            "deferred" to future.size - window.size,
+        )
+    }
+
+    /** Cancels the sentinel; the plan itself is cleared with the registry. */
+    @JvmStatic
+    fun cancelSentinel(context: Context) {
+        val pi = PendingIntent.getBroadcast(
+            context,
+            SENTINEL_REQUEST_CODE,
+            Intent(context, AlarmRefillReceiver::class.java),
+            PendingIntent.FLAG_NO_CREATE or AlarmScheduler.pendingIntentImmutableFlag()
+        ) ?: return
+        alarmManager(context).cancel(pi)
+        pi.cancel()
+    }
+
+    private fun armSentinel(context: Context, window: List<AlarmSpec>, planned: Int) {
+        if (window.isEmpty() || planned <= window.size) {
+            cancelSentinel(context)
+            return
+        }
+        // Refill once half the window has fired; the other half covers the
+        // slack of an inexact alarm.
+        val triggerAt = window[(window.size - 1) / 2].atMillis + 1
+        val pi = PendingIntent.getBroadcast(
+            context,
+            SENTINEL_REQUEST_CODE,
+            Intent(context, AlarmRefillReceiver::class.java),
+            PendingIntent.FLAG_UPDATE_CURRENT or AlarmScheduler.pendingIntentImmutableFlag()
+        )
+        val am = alarmManager(context)
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            am.setAndAllowWhileIdle(AlarmManager.RTC_WAKEUP, triggerAt, pi)
+        } else {
+            am.set(AlarmManager.RTC_WAKEUP, triggerAt, pi)
+        }
+    }
+
+    private fun activeIds(window: List<AlarmSpec>, outcome: AlarmReconciler.Outcome): List<Int> {
+        val failed = outcome.failed.toHashSet()
+        return window.map { it.id }.filter { it !in failed }
+    }
+
+    private fun readWindowSize(context: Context): Int {
+        return context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)
+            .getInt(WINDOW_SIZE_KEY, 0)
+    }
+
+    private fun storeWindowSize(context: Context, windowSize: Int) {
+        val prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)
+        if (prefs.getInt(WINDOW_SIZE_KEY, 0) == windowSize) return
+        prefs.edit().putInt(WINDOW_SIZE_KEY, windowSize).apply()
+    }
+
+    private fun alarmManager(context: Context): AlarmManager {
+        return context.getSystemService(Context.ALARM_SERVICE) as AlarmManager
+    }
+}
@@ -0,0 +1,201 @@
+package com.ici.mysched
+
+import android.content.Context
+import android.content.SharedPreferences
+import android.os.Build
+import android.os.UserManager
+import java.io.File
+import java.io.FileOutputStream
+import java.io.IOException
+
+/**
+ * Device-protected storage for everything an alarm needs before first unlock.
+ *
+ * The native stores (registry, payloads, plan, acks, latency, decoded tone)
+ * live in the device-protected `no_backup` directory; [noBackupFile] moves a
+ * store's credential-encrypted copy across the first time it is opened
+ * while unlocked. The few Flutter settings the alarm screen reads are
+ * mirrored into [PREFS_NAME] by a prefs listener, one small `apply()` per
+ * change, and [settings] picks the live prefs or the mirror depending on
+ * the lock state.
+ */
+object DirectBoot {
+    private const val TAG = "MySched"
+    private const val PREFS_NAME = "mysched_direct_boot"
+    private const val FLUTTER_PREFS = "FlutterSharedPreferences"
+    private const val MIGRATED_KEY = "storage_migrated"
+
+    /** Native store files, by owner: AlarmStore, AlarmPrefsHelper, AlarmLatency, AlarmToneCache. */
+    private val STORE_FILES = listOf(
+        "alarm_registry.bin",
+        "alarm_payloads.bin",
+        "alarm_plan.bin",
+        "alarm_acks.bin",
+        "alarm_latency.bin",
+        "alarm_tone.pcm",
+    )
+
+    /** Flutter settings read by the alarm screen, snooze, and tone cache. */
+    private val MIRRORED_KEYS = setOf(
+        "flutter.alarm_volume",
+        "flutter.alarm_ringtone",
+        "flutter.alarm_vibration",
+        "flutter.ui_theme_mode",
+        "flutter.snoozeMinutes",
+        "flutter.default_snooze_minutes",
+    )
+
+    @Volatile
+    private var unlocked = false
+    @Volatile
+    private var migrated = false
+    private var listener: SharedPreferences.OnSharedPreferenceChangeListener? = null
+
+    /** Whether credential-encrypted storage is available. Sticky once true. */
+    @JvmStatic
+    fun isUnlocked(context: Context): Boolean {
+        if (unlocked) return true
+        val result = Build.VERSION.SDK_INT < Build.VERSION_CODES.N ||
+            context.getSystemService(UserManager::class.java)?.isUserUnlocked != false
+        if (result) unlocked = true
+        return result
+    }
+
+    /** Device-protected context on N+, the application context before that. */
+    @JvmStatic
+    fun storageContext(context: Context): Context {
+        val appContext = context.applicationContext ?: context
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.N) return appContext
+        return appContext.createDeviceProtectedStorageContext()
+    }
+
+    /** Device-protected prefs for small native bookkeeping keys. */
+    @JvmStatic
+    fun prefs(context: Context): SharedPreferences {
+        return storageContext(context).getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)
+    }
+
+    /**
+     * Device-protected `no_backup/[name]`. While unlocked, a credential-
+     * encrypted copy left by an older build is moved over first.
+     */
+    @JvmStatic
+    fun noBackupFile(context: Context, name: String): File {
+        val target = File(storageContext(context).noBackupFilesDir, name)
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N && !target.exists() && isUnlocked(context)) {
+            synchronized(this) {
+                val legacy = File((context.applicationContext ?: context).noBackupFilesDir, name)
+                if (!target.exists() && legacy.exists()) moveAcross(legacy, target)
+            }
+        }
+        return target
+    }
+
+    /**
+     * Whether the native stores are in device-protected storage, i.e. a
+     * locked boot can read them. False until [prepare] has run unlocked once.
+     */
+    @JvmStatic
+    fun isMigrated(context: Context): Boolean {
+        if (migrated || Build.VERSION.SDK_INT < Build.VERSION_CODES.N) return true
+        migrated = prefs(context).getBoolean(MIGRATED_KEY, false)
+        return migrated
+    }
+
+    /** Moves every native store across and refreshes the settings mirror. Needs unlock. */
+    @JvmStatic
+    fun prepare(context: Context) {
+        if (!isUnlocked(context)) return
+        syncSettings(context)
+        if (isMigrated(context)) return
+        STORE_FILES.forEach { noBackupFile(context, it) }
+        prefs(context).edit().putBoolean(MIGRATED_KEY, true).apply()
+        migrated = true
+    }
+
+    /**
+     * Keeps the settings mirror current: copies each mirrored key as the
+     * Flutter side writes it. The initial sync and the one-time store move
+     * run on a worker thread.
+     */
+    @JvmStatic
+    @Synchronized
+    fun watch(context: Context) {
+        val appContext = context.applicationContext ?: context
+        if (listener == null) {
+            val flutterPrefs = appContext.getSharedPreferences(FLUTTER_PREFS, Context.MODE_PRIVATE)
+            // Prefs hold listeners weakly; the field keeps this one alive.
+            val created = SharedPreferences.OnSharedPreferenceChangeListener { source, key ->
+                if (key != null && key in MIRRORED_KEYS) {
+                    val editor = prefs(appContext).edit()
+                    copy(source.all[key], key, editor)
+                    editor.apply()
+                }
+            }
+            flutterPrefs.registerOnSharedPreferenceChangeListener(created)
+            listener = created
+        }
+        Thread({
+            try {
+                prepare(appContext)
+            } catch (e: Exception) {
+                android.util.Log.w(TAG, "[DirectBoot] Prepare failed", e)
+            }
+        }, "DirectBootPrepare").apply { isDaemon = true }.start()
+    }
+
+    /** Flutter prefs when unlocked, otherwise the device-protected mirror. */
+    @JvmStatic
+    fun settings(context: Context): SharedPreferences {
+        return if (isUnlocked(context)) {
+            (context.applicationContext ?: context).getSharedPreferences(FLUTTER_PREFS, Context.MODE_PRIVATE)
+        } else {
+            prefs(context)
+        }
+    }
+
+    private fun syncSettings(context: Context) {
+        val source = (context.applicationContext ?: context)
+            .getSharedPreferences(FLUTTER_PREFS, Context.MODE_PRIVATE).all
+        val mirror = prefs(context)
+        val current = mirror.all
+        val editor = mirror.edit()
+        var dirty = false
+        for (key in MIRRORED_KEYS) {
+            val value = source[key]
+            if (value == current[key]) continue
+            copy(value, key, editor)
+            dirty = true
+        }
+        if (dirty) editor.apply()
+    }
+
+    private fun copy(value: Any?, key: String, editor: SharedPreferences.Editor) {
+        when (value) {
+            is Long -> editor.putLong(key, value)
+            is Int -> editor.putInt(key, value)
+            is Boolean -> editor.putBoolean(key, value)
+            is Float -> editor.putFloat(key, value)
+            is String -> editor.putString(key, value)
+            else -> editor.remove(key)
+        }
+    }
+
+    /** Copy then delete: a rename cannot cross the two storage encryption policies. */
+    private fun moveAcross(source: File, target: File) {
+        val tmp = File(target.path + ".tmp")
+        try {
+            target.parentFile?.mkdirs()
+            FileOutputStream(tmp).use { out ->
+                source.inputStream().use { it.copyTo(out) }
+                out.fd.sync()
+            }
+            if (!tmp.renameTo(target)) throw IOException("Failed to replace ${target.name}")
+            source.delete()
+            android.util.Log.i(TAG, "[DirectBoot] Moved ${source.name} to device-protected storage")
+        } catch (e: IOException) {
+            tmp.delete()
+            android.util.Log.w(TAG, "[DirectBoot] Could not move ${source.name}", e)
+        }
+    }
+}
@@ -2,7 +2,6 @@ package com.ici.mysched
 
 import android.Manifest
 import android.app.AlarmManager
-import android.app.PendingIntent
 import android.content.Context
 import android.content.Intent
 import android.content.pm.PackageManager
@@ -23,6 +22,7 @@ import io.flutter.plugin.common.MethodCall
 import io.flutter.plugin.common.MethodChannel
 import androidx.core.content.ContextCompat
 import androidx.core.app.NotificationManagerCompat
+import java.util.concurrent.Executors
 
 class MainActivity : FlutterActivity() {
     private val channelName = "mysched/native_alarm"
@@ -32,6 +32,9 @@ class MainActivity : FlutterActivity() {
 
     override fun configureFlutterEngine(flutterEngine: FlutterEngine) {
         super.configureFlutterEngine(flutterEngine)
+        AlarmAudit.ensureScheduled(this)
+        AlarmToneCache.watch(this)
+        DirectBoot.watch(this)
         MethodChannel(flutterEngine.dartExecutor.binaryMessenger, channelName)
             .setMethodCallHandler { call, result ->
                 when (call.method) {
@@ -47,70 +50,68 @@ class MainActivity : FlutterActivity() {
                         }
                     }
                     "scheduleNativeAlarmAt" -> {
-                        try {
-                            val atMillis = call.argument<Long>("atMillis")
-                                ?: throw IllegalArgumentException("atMillis required")
-                            val id = call.argument<Int>("id")
-                                ?: throw IllegalArgumentException("id required")
-                            val title = call.argument<String>("title") ?: "Alarm"
-                            val body = call.argument<String>("body") ?: "It's time!"
-                            val classId = call.argument<Int>("classId") ?: -1
-                            val occurrenceKey = call.argument<String>("occurrenceKey") ?: ""
-                            val subject = call.argument<String>("subject")
-                            val room = call.argument<String>("room")
-                            val startLabel = call.argument<String>("startTime")
-                            val endLabel = call.argument<String>("endTime")
-                            val headsUpOnly = call.argument<Boolean>("headsUpOnly") ?: false
-                            if (headsUpOnly) {
-                                scheduleHeadsUpAlarmAtMillis(
-                                    atMillis,
-                                    id,
-                                    title,
-                                    body,
-                                    classId,
-                                    occurrenceKey,
-                                    subject,
-                                    room,
-                                    startLabel,
-                                    endLabel
-                                )
-                            } else {
-                                scheduleAlarmAtMillis(
-                                    atMillis,
-                                    id,
-                                    title,
-                                    body,
-                                    classId,
-                                    occurrenceKey,
-                                    subject,
-                                    room,
-                                    startLabel,
-                                    endLabel
-                                )
-                            }
-                            result.success(true)
-                        } catch (e: Exception) {
-                            result.error("schedule_failed", e.message, null)
+                        val args = call.arguments as? Map<*, *>
+                        val appContext = applicationContext
+                        runAlarmWork(result, "schedule_failed") {
+                            if (args == null) throw IllegalArgumentException("arguments required")
+                            AlarmScheduler.schedule(appContext, AlarmSpec.fromMap(args))
+                            true
                         }
                     }
+                    "scheduleNativeAlarmsBatch" -> {
+                        val alarms = call.argument<List<Map<String, Any?>>>("alarms")
+                        val appContext = applicationContext
+                        runAlarmWork(result, "schedule_batch_failed") {
+                            if (alarms == null) throw IllegalArgumentException("alarms required")
+                            val specs = alarms.map { AlarmSpec.fromMap(it) }
+                            AlarmScheduler.scheduleBatch(appContext, specs)
+                        }
+                    }
+                    "reconcileNativeAlarms" -> {
+                        val alarms = call.argument<List<Map<String, Any?>>>("alarms")
+                        val owned = call.argument<List<Int>>("owned") ?: emptyList()
+                        val window = call.argument<Int>("window") ?: 0
+                        val appContext = applicationContext
+                        runAlarmWork(result, "reconcile_failed") {
+                            if (alarms == null) throw IllegalArgumentException("alarms required")
+                            val specs = alarms.map { AlarmSpec.fromMap(it) }
+                            AlarmWindow.reconcile(appContext, specs, owned, window)
+                        }
+                    }
+                    "applyNativeAlarmDelta" -> {
+                        val alarms = call.argument<List<Map<String, Any?>>>("alarms") ?: emptyList()
+                        val removed = call.argument<List<Int>>("removed") ?: emptyList()
+                        val appContext = applicationContext
+                        runAlarmWork(result, "delta_failed") {
+                            val specs = alarms.map { AlarmSpec.fromMap(it) }
+                            AlarmWindow.applyDelta(appContext, specs, removed)
+                        }
+                    }
+                    "alarmDeliveryStats" -> {
+                        val appContext = applicationContext
+                        runAlarmWork(result, "stats_failed") { AlarmLatency.stats(appContext) }
+                    }
                     "cancelNativeAlarm" -> {
-                        try {
-                            val id = call.argument<Int>("id")
-                                ?: throw IllegalArgumentException("id required")
-                            cancelAlarmById(id)
-                            result.success(true)
-                        } catch (e: Exception) {
-                            result.error("cancel_failed", e.message, null)
+                        val id = call.argument<Int>("id")
+                        val appContext = applicationContext
+                        runAlarmWork(result, "cancel_failed") {
+                            if (id == null) throw IllegalArgumentException("id required")
+                            AlarmScheduler.cancel(appContext, id)
+                            true
                         }
                     }
-                    "cancelAllNativeAlarms" -> {
-                        try {
-                            cancelAllScheduledAlarms()
-                            result.success(true)
-                        } catch (e: Exception) {
-                            result.error("cancel_all_failed", e.message, null)
+                    "cancelNativeAlarmsBatch" -> {
+                        val ids = call.argument<List<Int>>("ids")
+                        val appContext = applicationContext
+                        runAlarmWork(result, "cancel_batch_failed") {
+                            if (ids == null) throw IllegalArgumentException("ids required")
+                            AlarmScheduler.cancelBatch(appContext, ids)
+                            true
                         }
                     }
+                    "cancelAllNativeAlarms" -> {
+                        cancelAllScheduledAlarms(result)
+                    }
                     "isOccurrenceAcknowledged" -> {
                         try {
                             val classId = call.argument<Int>("classId") ?: -1
@@ -237,139 +238,45 @@ class MainActivity : FlutterActivity() {
     }
 
     private fun scheduleAlarmIn(seconds: Long, title: String, body: String) {
-        val ctx = this
-        val am = ctx.getSystemService(Context.ALARM_SERVICE) as AlarmManager
-
         val triggerAt = System.currentTimeMillis() + seconds * 1000
         val requestCode = (triggerAt % Int.MAX_VALUE).toInt()
-        val broadcastIntent = Intent(ctx, AlarmReceiver::class.java).apply {
-            putExtra("title", title)
-            putExtra("body", body)
-            putExtra("requestCode", requestCode)
-        }
-        val broadcastPi = PendingIntent.getBroadcast(
-            ctx,
-            requestCode,
-            broadcastIntent,
-            PendingIntent.FLAG_UPDATE_CURRENT or pendingIntentImmutableFlag()
+        val payload = AlarmPayload(
+            requestCode = requestCode,
+            classId = -1,
+            atMillis = triggerAt,
+            occurrenceKey = "",
+            title = title,
+            body = body,
+            subject = null,
+            room = null,
+            startTime = null,
+            endTime = null,
         )
-        val info = AlarmManager.AlarmClockInfo(triggerAt, broadcastPi)
-        am.setAlarmClock(info, broadcastPi)
+        AlarmDispatcher.setAlarmClock(this, payload)
         AlarmStore.rememberAlarmId(this, requestCode)
-        AlarmStore.addNativeId(this, requestCode)
     }
 
-    private fun scheduleAlarmAtMillis(
-        triggerAt: Long,
-        requestCode: Int,
-        title: String,
-        body: String,
-        classId: Int,
-        occurrenceKey: String,
-        subject: String?,
-        room: String?,
-        startLabel: String?,
-        endLabel: String?
-    ) {
-        val ctx = this
-        val am = ctx.getSystemService(Context.ALARM_SERVICE) as AlarmManager
-
-        val broadcastIntent = Intent(ctx, AlarmReceiver::class.java).apply {
-            putExtra("title", title)
-            putExtra("body", body)
-            putExtra("requestCode", requestCode)
-            putExtra("classId", classId)
-            putExtra("occurrenceKey", occurrenceKey)
-            subject?.let { putExtra("subject", it) }
-            room?.let { putExtra("room", it) }
-            startLabel?.let { putExtra("startTime", it) }
-            endLabel?.let { putExtra("endTime", it) }
+    private fun cancelAllScheduledAlarms(result: MethodChannel.Result) {
+        val appContext = applicationContext
+        runAlarmWork(result, "cancel_all_failed") {
+            AlarmScheduler.cancelAll(appContext).toMap()
         }
-        val broadcastPi = PendingIntent.getBroadcast(
-            ctx,
-            requestCode,
-            broadcastIntent,
-            PendingIntent.FLAG_UPDATE_CURRENT or pendingIntentImmutableFlag()
-        )
-        val info = AlarmManager.AlarmClockInfo(triggerAt, broadcastPi)
-        am.setAlarmClock(info, broadcastPi)
-        AlarmStore.rememberAlarmId(this, requestCode)
-        if (classId != -1) {
-            AlarmStore.addClassScheduleId(this, classId, requestCode)
-        }
-        AlarmStore.addNativeId(this, requestCode)
     }
 
-    private fun scheduleHeadsUpAlarmAtMillis(
-        triggerAt: Long,
-        requestCode: Int,
-        title: String,
-        body: String,
-        classId: Int,
-        occurrenceKey: String,
-        subject: String?,
-        room: String?,
-        startLabel: String?,
-        endLabel: String?,
-    ) {
-        val ctx = this
-        val am = ctx.getSystemService(Context.ALARM_SERVICE) as AlarmManager
-
-        val broadcastIntent = Intent(ctx, HeadsUpReceiver::class.java).apply {
-            putExtra("title", title)
-            putExtra("body", body)
-            putExtra("requestCode", requestCode)
-            putExtra("classId", classId)
-            putExtra("occurrenceKey", occurrenceKey)
-            subject?.let { putExtra("subject", it) }
-            room?.let { putExtra("room", it) }
-            startLabel?.let { putExtra("startTime", it) }
-            endLabel?.let { putExtra("endTime", it) }
-        }
-        val broadcastPi = PendingIntent.getBroadcast(
-            ctx,
-            requestCode,
-            broadcastIntent,
-            PendingIntent.FLAG_UPDATE_CURRENT or pendingIntentImmutableFlag()
-        )
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
-            am.setExactAndAllowWhileIdle(AlarmManager.RTC_WAKEUP, triggerAt, broadcastPi)
-        } else {
-            am.setExact(AlarmManager.RTC_WAKEUP, triggerAt, broadcastPi)
-        }
-        AlarmStore.rememberAlarmId(this, requestCode)
-        AlarmStore.addNativeId(this, requestCode)
-    }
-
-    private fun cancelAlarmById(requestCode: Int) {
-        val ctx = this
-        val am = ctx.getSystemService(Context.ALARM_SERVICE) as AlarmManager
-
-        fun cancelReceiver(receiver: Class<*>) {
-            val intent = Intent(ctx, receiver)
-            val pi = PendingIntent.getBroadcast(
-                ctx,
-                requestCode,
-                intent,
-                PendingIntent.FLAG_NO_CREATE or pendingIntentImmutableFlag()
-            )
-            if (pi != null) {
-                am.cancel(pi)
-                pi.cancel()
+    /**
+     * Runs [work] on the alarm worker and posts its value, or [errorCode]
+     * on failure, back to the main thread. One worker keeps every alarm
+     * schedule and cancel call in the order Dart sent them.
+     */
+    private fun runAlarmWork(result: MethodChannel.Result, errorCode: String, work: () -> Any?) {
+        alarmWorker.execute {
+            try {
+                val value = work()
+                runOnUiThread { result.success(value) }
+            } catch (e: Exception) {
+                runOnUiThread { result.error(errorCode, e.message, null) }
             }
         }
-
-        cancelReceiver(AlarmReceiver::class.java)
-        cancelReceiver(HeadsUpReceiver::class.java)
-        AlarmStore.forgetAlarmId(this, requestCode)
-        AlarmStore.removeNativeId(this, requestCode)
-    }
-
-    private fun cancelAllScheduledAlarms() {
-        val ids = AlarmStore.getRememberedAlarmIds(this).toList()
-        for (id in ids) {
-            try { cancelAlarmById(id) } catch (_: Exception) {}
-        }
     }
 
     private fun isOccurrenceAcknowledged(classId: Int, occurrenceKey: String): Boolean {
@@ -636,10 +543,6 @@ class MainActivity : FlutterActivity() {
         return false
     }
 
-    private fun pendingIntentImmutableFlag(): Int {
-        return if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) PendingIntent.FLAG_IMMUTABLE else 0
-    }
-
     private fun handleNavigationIntent(intent: Intent?) {
         if (intent == null) return
         if (intent.getBooleanExtra("navigate_to_reminders", false)) {
@@ -740,5 +643,12 @@ class MainActivity : FlutterActivity() {
             currentPreviewRingtone = null
         } catch (_: Exception) {}
     }
+
+    companion object {
+        /** Shared across activity instances so a recreated activity queues behind in-flight work. */
+        private val alarmWorker = Executors.newSingleThreadExecutor { runnable ->
+            Thread(runnable, "AlarmChannelWork").apply { isDaemon = true }
+        }
+    }
 }
 
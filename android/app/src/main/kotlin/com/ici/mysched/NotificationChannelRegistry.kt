@@ -0,0 +1,111 @@
+package com.ici.mysched
+
+import android.app.NotificationChannel
+import android.app.NotificationManager
+import android.content.Context
+import android.content.pm.PackageManager
+import android.os.Build
+import androidx.core.app.NotificationCompat
+
+/**
+ * Every notification channel posted to from native code.
+ *
+ * [ensure] creates all of them with one `createNotificationChannels` call
+ * the first time a given app version runs, records that version, and
+ * after that only checks an in-memory flag. Notification paths (including
+ * the alarm fire path) therefore make no channel binder calls once the
+ * process is warm, and at most one per process before that.
+ */
+object NotificationChannelRegistry {
+    private const val TAG = "MySched"
+    private const val VERSION_KEY = "notification_channels_version"
+
+    /** Bump when a channel definition below changes. */
+    private const val SCHEMA = 1
+
+    const val ALARM = "mysched_alarm_channel_v2"
+    const val ALARM_SERVICE = "mysched_alarm_service_channel"
+    const val HEADS_UP = "mysched_heads_up"
+    const val SNOOZE_FEEDBACK = "mysched_snooze_feedback"
+    const val BOOT = "mysched_boot_channel"
+
+    @Volatile
+    private var ready = false
+
+    /** Makes sure every channel exists. Cheap after the first call per process. */
+    @JvmStatic
+    fun ensure(context: Context) {
+        if (ready) return
+        synchronized(this) {
+            if (ready) return
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+                val appContext = context.applicationContext ?: context
+                // Device-protected, so a locked boot does not recreate channels.
+                val prefs = DirectBoot.prefs(appContext)
+                val version = "$SCHEMA:${appVersion(appContext)}"
+                if (prefs.getString(VERSION_KEY, null) != version) {
+                    val nm = appContext.getSystemService(NotificationManager::class.java) ?: return
+                    nm.createNotificationChannels(channels())
+                    prefs.edit().putString(VERSION_KEY, version).apply()
+                    android.util.Log.d(TAG, "[NotificationChannelRegistry] Created channels for $version")
+                }
+            }
+            ready = true
+        }
+    }
+
+    private fun channels(): List<NotificationChannel> {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.O) return emptyList()
+        val alarm = NotificationChannel(ALARM, "Alarms", NotificationManager.IMPORTANCE_HIGH).apply {
+            description = "Alarm notifications"
+            lockscreenVisibility = NotificationCompat.VISIBILITY_PUBLIC
+            enableVibration(true)
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) setBypassDnd(true)
+        }
+        val service = NotificationChannel(
+            ALARM_SERVICE,
+            "Alarm Service",
+            NotificationManager.IMPORTANCE_LOW
+        ).apply {
+            description = "Ensures alarms fire reliably"
+            setShowBadge(false)
+            setSound(null, null)
+        }
+        val headsUp = NotificationChannel(
+            HEADS_UP,
+            "Upcoming Class Alerts",
+            NotificationManager.IMPORTANCE_HIGH
+        ).apply {
+            description = "Heads-up notifications before class alarms fire"
+            enableVibration(true)
+            lockscreenVisibility = NotificationCompat.VISIBILITY_PUBLIC
+        }
+        val snooze = NotificationChannel(
+            SNOOZE_FEEDBACK,
+            "Snooze Feedback",
+            NotificationManager.IMPORTANCE_LOW
+        ).apply {
+            description = "Confirms when reminders are snoozed"
+            enableVibration(false)
+        }
+        val boot = NotificationChannel(BOOT, "System Messages", NotificationManager.IMPORTANCE_LOW).apply {
+            description = "System notifications for app updates"
+            setShowBadge(false)
+        }
+        return listOf(alarm, service, headsUp, snooze, boot)
+    }
+
+    private fun appVersion(context: Context): Long {
+        return try {
+            val info = context.packageManager.getPackageInfo(context.packageName, 0)
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
+                info.longVersionCode
+            } else {
+                @Suppress("DEPRECATION")
+                info.versionCode.toLong()
+            }
+        } catch (_: PackageManager.NameNotFoundException) {
+            0L
+        }
+    }
+}
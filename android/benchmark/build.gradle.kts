@@ -0,0 +1,59 @@
+plugins {
+    kotlin("jvm") version "2.1.0"
+    id("me.champeau.jmh") version "0.7.2"
+}
+
+kotlin {
+    jvmToolchain(17)
+}
+
+// The persistence layer is compiled straight from the app sources against
+// the minimal android.* shims in src/shims/java.
+val appSources = "../app/src/main"
+val benchmarkedSources = listOf(
+    "com/ici/mysched/AlarmRegistry.kt",
+    "com/ici/mysched/AlarmStore.kt",
+    "com/ici/mysched/AckStore.kt",
+    "com/ici/mysched/AlarmPrefsHelper.kt",
+    "com/ici/mysched/AlarmPayloadStore.kt",
+    "com/ici/mysched/AlarmSpec.kt",
+    "com/ici/mysched/DirectBoot.kt",
+    "com/ici/mysched/AlarmIds.java",
+)
+
+sourceSets {
+    create("shims")
+    main {
+        java {
+            srcDir("$appSources/java")
+            include("com/ici/mysched/benchmark/**")
+            include(benchmarkedSources)
+        }
+        kotlin {
+            srcDir("$appSources/kotlin")
+            include(benchmarkedSources)
+        }
+    }
+}
+
+dependencies {
+    // Android ships org.json; on the JVM it comes from Maven Central.
+    implementation("org.json:json:20240303")
+    implementation(sourceSets["shims"].output)
+}
+
+tasks.withType<JavaCompile>().configureEach {
+    options.encoding = "UTF-8"
+}
+
+jmh {
+    jmhVersion.set("1.37")
+    warmupIterations.set(2)
+    warmup.set("1s")
+    iterations.set(3)
+    timeOnIteration.set("1s")
+    fork.set(1)
+    resultFormat.set("JSON")
+    resultsFile.set(layout.projectDirectory.file("results/jmh-results.json"))
+    providers.gradleProperty("jmhInclude").orNull?.let { includes.add(it) }
+}
@@ -0,0 +1,15 @@
+pluginManagement {
+    repositories {
+        gradlePluginPortal()
+        mavenCentral()
+    }
+}
+
+dependencyResolutionManagement {
+    repositories {
+        mavenCentral()
+    }
+}
+
+// Standalone build: runs on a plain JVM without the Flutter/Android toolchain.
+rootProject.name = "mysched-benchmark"
@@ -0,0 +1,62 @@
+package com.ici.mysched.benchmark
+
+import com.ici.mysched.AckStore
+import com.ici.mysched.AlarmPrefsHelper
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Level
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import org.openjdk.jmh.annotations.TearDown
+import java.io.File
+import java.nio.file.Files
+import java.util.concurrent.TimeUnit
+
+/**
+ * Occurrence acknowledgements through AlarmPrefsHelper with [size] acks
+ * already stored. Same fork-per-param requirement as [AlarmStoreBenchmark].
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+open class AckStoreBenchmark {
+    @Param("10", "1000", "10000")
+    var size: Int = 0
+
+    private lateinit var dir: File
+    private lateinit var context: FakeContext
+    private lateinit var today: String
+    private var cursor = 0
+
+    @Setup(Level.Trial)
+    fun setUp() {
+        dir = Files.createTempDirectory("ack-store-bench").toFile()
+        context = FakeContext(dir)
+        today = AckStore.todayKey().toString()
+        AlarmPrefsHelper.ackStore(context).addAll((0 until size).map { it to today })
+    }
+
+    @TearDown(Level.Trial)
+    fun tearDown() {
+        dir.deleteRecursively()
+    }
+
+    @Benchmark
+    fun isAcknowledged(): Boolean {
+        val classId = (cursor++ * 7919) % (size * 2)
+        return AlarmPrefsHelper.isOccurrenceAcknowledged(context, classId, today)
+    }
+
+    /** Ack then clear one occurrence, then flush: one durable store write. */
+    @Benchmark
+    fun acknowledgeThenClear() {
+        val classId = size + (cursor++ and 1023)
+        AlarmPrefsHelper.setOccurrenceAcknowledged(context, classId, today, true)
+        AlarmPrefsHelper.setOccurrenceAcknowledged(context, classId, today, false)
+        AlarmPrefsHelper.flushAcks()
+    }
+}
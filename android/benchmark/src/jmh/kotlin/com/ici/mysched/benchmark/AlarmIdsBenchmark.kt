@@ -0,0 +1,31 @@
+package com.ici.mysched.benchmark
+
+import com.ici.mysched.AlarmIds
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.State
+import java.util.concurrent.TimeUnit
+
+/** Snooze request-code and occurrence-key derivation used by the alarm screen. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+open class AlarmIdsBenchmark {
+    private var triggerAt = 1_704_067_200_000L
+    private var classId = 0
+
+    @Benchmark
+    fun snoozeRequestCode(): Int {
+        triggerAt += 60_000L
+        return AlarmIds.snoozeRequestCode(classId++ and 63, triggerAt)
+    }
+
+    @Benchmark
+    fun occurrenceKey(): String {
+        triggerAt += 3_600_000L
+        return AlarmIds.occurrenceKey(triggerAt)
+    }
+}
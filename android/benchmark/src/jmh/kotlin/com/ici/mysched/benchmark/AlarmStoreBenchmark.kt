@@ -0,0 +1,85 @@
+package com.ici.mysched.benchmark
+
+import com.ici.mysched.AlarmStore
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Level
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import org.openjdk.jmh.annotations.TearDown
+import java.io.File
+import java.nio.file.Files
+import java.util.concurrent.TimeUnit
+
+/**
+ * AlarmStore id bookkeeping with [size] alarms already tracked.
+ *
+ * AlarmStore keeps a process-wide registry, so every @Param value must run
+ * in its own fork (the default); do not run with `-f 0`.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+open class AlarmStoreBenchmark {
+    @Param("10", "1000", "10000")
+    var size: Int = 0
+
+    private lateinit var dir: File
+    private lateinit var context: FakeContext
+    private lateinit var probes: IntArray
+    private var cursor = 0
+    private var nextId = 0
+
+    @Setup(Level.Trial)
+    fun setUp() {
+        dir = Files.createTempDirectory("alarm-store-bench").toFile()
+        context = FakeContext(dir)
+        AlarmStore.trackAll(context, (0 until size).associateWith { it % CLASS_COUNT })
+        AlarmStore.flush(context)
+        probes = IntArray(PROBE_COUNT) { (it * 7919) % (size * 2) }
+        nextId = size
+    }
+
+    @TearDown(Level.Trial)
+    fun tearDown() {
+        AlarmStore.flush(context)
+        dir.deleteRecursively()
+    }
+
+    @Benchmark
+    fun rememberThenForget() {
+        val id = nextId++
+        AlarmStore.addClassScheduleId(context, id % CLASS_COUNT, id)
+        AlarmStore.forgetAlarmId(context, id)
+    }
+
+    @Benchmark
+    fun lookup(): Boolean {
+        val id = probes[cursor++ and (PROBE_COUNT - 1)]
+        return AlarmStore.registry(context).contains(id)
+    }
+
+    @Benchmark
+    fun idsForClass(): Int {
+        val classId = cursor++ % CLASS_COUNT
+        return AlarmStore.registry(context).idsForClass(classId).size
+    }
+
+    /** One class-linked mutation plus a synchronous commit (registry append + that class's prefs key). */
+    @Benchmark
+    fun rememberAndFlush() {
+        val id = nextId++
+        AlarmStore.addClassScheduleId(context, id % CLASS_COUNT, id)
+        AlarmStore.flush(context)
+        AlarmStore.forgetAlarmId(context, id)
+    }
+
+    private companion object {
+        const val CLASS_COUNT = 40
+        const val PROBE_COUNT = 1024
+    }
+}
@@ -0,0 +1,45 @@
+package com.ici.mysched.benchmark;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.UserManager;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+/** {@link Context} backed by {@link FakeSharedPreferences} and a scratch directory. */
+public final class FakeContext extends Context {
+    private final File noBackupDir;
+    private final Map<String, FakeSharedPreferences> prefs = new HashMap<>();
+
+    public FakeContext(File noBackupDir) {
+        this.noBackupDir = noBackupDir;
+    }
+
+    @Override
+    public Context getApplicationContext() {
+        return this;
+    }
+
+    @Override
+    public synchronized SharedPreferences getSharedPreferences(String name, int mode) {
+        return prefs.computeIfAbsent(name, key -> new FakeSharedPreferences());
+    }
+
+    @Override
+    public File getNoBackupFilesDir() {
+        return noBackupDir;
+    }
+
+    /** Storage is not split on the JVM; this context is already device-protected. */
+    @Override
+    public Context createDeviceProtectedStorageContext() {
+        return this;
+    }
+
+    @Override
+    public <T> T getSystemService(Class<T> serviceClass) {
+        return serviceClass == UserManager.class ? serviceClass.cast(new UserManager()) : null;
+    }
+}
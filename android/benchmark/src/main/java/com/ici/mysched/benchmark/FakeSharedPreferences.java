@@ -0,0 +1,164 @@
+package com.ici.mysched.benchmark;
+
+import android.content.SharedPreferences;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * In-memory {@link SharedPreferences}. Editors stage changes and publish
+ * them atomically on {@code apply()}/{@code commit()}, like the framework
+ * implementation, minus the disk write. Change listeners are accepted but
+ * never called.
+ */
+public final class FakeSharedPreferences implements SharedPreferences {
+    private final Object lock = new Object();
+    private Map<String, Object> values = new HashMap<>();
+
+    @Override
+    public Map<String, ?> getAll() {
+        synchronized (lock) {
+            return new HashMap<>(values);
+        }
+    }
+
+    @Override
+    public String getString(String key, String defValue) {
+        Object value = read(key);
+        return value != null ? (String) value : defValue;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Set<String> getStringSet(String key, Set<String> defValues) {
+        Object value = read(key);
+        return value != null ? (Set<String>) value : defValues;
+    }
+
+    @Override
+    public int getInt(String key, int defValue) {
+        Object value = read(key);
+        return value != null ? (Integer) value : defValue;
+    }
+
+    @Override
+    public long getLong(String key, long defValue) {
+        Object value = read(key);
+        return value != null ? (Long) value : defValue;
+    }
+
+    @Override
+    public float getFloat(String key, float defValue) {
+        Object value = read(key);
+        return value != null ? (Float) value : defValue;
+    }
+
+    @Override
+    public boolean getBoolean(String key, boolean defValue) {
+        Object value = read(key);
+        return value != null ? (Boolean) value : defValue;
+    }
+
+    @Override
+    public boolean contains(String key) {
+        return read(key) != null;
+    }
+
+    @Override
+    public Editor edit() {
+        return new FakeEditor();
+    }
+
+    @Override
+    public void registerOnSharedPreferenceChangeListener(OnSharedPreferenceChangeListener listener) {}
+
+    @Override
+    public void unregisterOnSharedPreferenceChangeListener(OnSharedPreferenceChangeListener listener) {}
+
+    private Object read(String key) {
+        synchronized (lock) {
+            return values.get(key);
+        }
+    }
+
+    private final class FakeEditor implements Editor {
+        private final Map<String, Object> staged = new HashMap<>();
+        private final Set<String> removed = new HashSet<>();
+        private boolean clear;
+
+        @Override
+        public Editor putString(String key, String value) {
+            return stage(key, value);
+        }
+
+        @Override
+        public Editor putStringSet(String key, Set<String> values) {
+            return stage(key, values == null ? null : new HashSet<>(values));
+        }
+
+        @Override
+        public Editor putInt(String key, int value) {
+            return stage(key, value);
+        }
+
+        @Override
+        public Editor putLong(String key, long value) {
+            return stage(key, value);
+        }
+
+        @Override
+        public Editor putFloat(String key, float value) {
+            return stage(key, value);
+        }
+
+        @Override
+        public Editor putBoolean(String key, boolean value) {
+            return stage(key, value);
+        }
+
+        @Override
+        public Editor remove(String key) {
+            staged.remove(key);
+            removed.add(key);
+            return this;
+        }
+
+        @Override
+        public Editor clear() {
+            clear = true;
+            return this;
+        }
+
+        @Override
+        public boolean commit() {
+            synchronized (lock) {
+                Map<String, Object> next = clear ? new HashMap<>() : new HashMap<>(values);
+                for (String key : removed) {
+                    next.remove(key);
+                }
+                for (Map.Entry<String, Object> entry : staged.entrySet()) {
+                    if (entry.getValue() == null) {
+                        next.remove(entry.getKey());
+                    } else {
+                        next.put(entry.getKey(), entry.getValue());
+                    }
+                }
+                values = next;
+            }
+            return true;
+        }
+
+        @Override
+        public void apply() {
+            commit();
+        }
+
+        private Editor stage(String key, Object value) {
+            removed.remove(key);
+            staged.put(key, value);
+            return this;
+        }
+    }
+}
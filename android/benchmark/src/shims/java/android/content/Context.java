@@ -0,0 +1,21 @@
+package android.content;
+
+import java.io.File;
+
+/**
+ * JVM stand-in for the slice of {@code android.content.Context} the alarm
+ * persistence layer touches. Not the framework class; benchmarks only.
+ */
+public abstract class Context {
+    public static final int MODE_PRIVATE = 0;
+
+    public abstract Context getApplicationContext();
+
+    public abstract SharedPreferences getSharedPreferences(String name, int mode);
+
+    public abstract File getNoBackupFilesDir();
+
+    public abstract Context createDeviceProtectedStorageContext();
+
+    public abstract <T> T getSystemService(Class<T> serviceClass);
+}
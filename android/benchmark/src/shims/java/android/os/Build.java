@@ -0,0 +1,18 @@
+package android.os;
+
+/** JVM stand-in for {@code android.os.Build}; reports a current API level. */
+public final class Build {
+    private Build() {}
+
+    public static final class VERSION {
+        public static final int SDK_INT = 34;
+
+        private VERSION() {}
+    }
+
+    public static final class VERSION_CODES {
+        public static final int N = 24;
+
+        private VERSION_CODES() {}
+    }
+}
@@ -0,0 +1,8 @@
+package android.os;
+
+/** JVM stand-in for {@code android.os.UserManager}; the user is always unlocked. */
+public class UserManager {
+    public boolean isUserUnlocked() {
+        return true;
+    }
+}
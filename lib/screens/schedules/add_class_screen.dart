@@ -845,7 +845,8 @@ class _AddClassFormState extends State<AddClassForm> {
     try {
       await widget.api.refreshMyClasses();
       await Future.delayed(AppMotionSystem.deliberate);
-      await NotifScheduler.resync(api: widget.api);
+      // Edits arrive as a classUpdated event; adds carry no class id.
+      if (!_isEditing) await NotifScheduler.resync(api: widget.api);
     } catch (error, stack) {
       AppLog.error(_scope, 'post_save_sync_failed', error: error, stack: stack);
     }
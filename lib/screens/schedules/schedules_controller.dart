@@ -9,7 +9,6 @@ import '../../models/schedule_filter.dart';
 import '../../services/auth_service.dart';
 import '../../services/export_queue.dart';
 import '../../services/instructor_service.dart';
-import '../../services/notification_scheduler.dart';
 import '../../services/offline_cache_service.dart';
 import '../../services/profile_cache.dart';
 import '../../services/schedule_repository.dart' as sched;
@@ -341,8 +340,7 @@ class SchedulesController extends ChangeNotifier {
     try {
       await _api.setClassEnabled(item, enable);
       _applyClassEnabled(item.id, enable);
-      // Fire-and-forget notification resync to avoid blocking UI
-      NotifScheduler.resync(api: _api);
+      // Alarms follow via the classEnabled/classDisabled schedule event.
       // Widgets removed: no widget update
     } catch (error) {
       onError(enable
@@ -379,7 +377,6 @@ class SchedulesController extends ChangeNotifier {
       await _api.deleteCustomClass(id);
       dirty = true;
       await refresh(); // This already calls widget update
-      await NotifScheduler.resync(api: _api);
       onSuccess('Custom class removed.');
     } catch (error) {
       onError('Failed to delete class: $error');
@@ -1,7 +1,6 @@
 import 'package:flutter/material.dart';
 import 'package:go_router/go_router.dart';
 import '../../app/routes.dart';
-import '../../services/notification_scheduler.dart';
 import '../../services/schedule_repository.dart' as sched;
 import '../../ui/kit/kit.dart';
 import '../../ui/theme/tokens.dart';
@@ -216,7 +215,6 @@ class SchedulesPageState extends State<SchedulesPage> with RouteAware {
         isInstructor: _controller.isInstructor,
         onDetailsChanged: (details) async {
           _controller.applyClassEnabled(details.id, details.enabled);
-          await NotifScheduler.resync(api: widget.api);
         },
         onEditCustom: initial.isCustom
             ? (details) async {
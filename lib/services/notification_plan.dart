@@ -0,0 +1,406 @@
+part of 'notification_scheduler.dart';
+
+/// How far ahead [NotifScheduler.resync] plans class alarms.
+class AlarmHorizon {
+  /// Every occurrence that starts within [span] of now.
+  const AlarmHorizon.time(Duration this.span) : occurrences = null;
+
+  /// The next [occurrences] occurrences of each class.
+  const AlarmHorizon.count(int this.occurrences) : span = null;
+
+  /// A span derived from how often the app is opened (see [adaptiveSpan]).
+  const AlarmHorizon.adaptive()
+      : span = null,
+        occurrences = null;
+
+  static const minAdaptiveSpan = Duration(days: 14);
+  static const maxAdaptiveSpan = Duration(days: 42);
+
+  final Duration? span;
+  final int? occurrences;
+
+  bool get isAdaptive => span == null && occurrences == null;
+
+  /// Twice the longest recent gap between app opens (oldest first, the
+  /// last one running to [now]), within [minAdaptiveSpan] and
+  /// [maxAdaptiveSpan]. Someone who opens the app daily gets two weeks;
+  /// someone who opens it monthly gets six.
+  static Duration adaptiveSpan(List<DateTime> opens, DateTime now) {
+    var longest = Duration.zero;
+    for (var i = 0; i < opens.length; i++) {
+      final next = i + 1 < opens.length ? opens[i + 1] : now;
+      final gap = next.difference(opens[i]);
+      if (gap > longest) longest = gap;
+    }
+    final span = longest * 2;
+    if (span < minAdaptiveSpan) return minAdaptiveSpan;
+    if (span > maxAdaptiveSpan) return maxAdaptiveSpan;
+    return span;
+  }
+}
+
+/// A resolved horizon: week laps to walk, an optional last start time,
+/// and the most occurrences the platform budget allows.
+class _PlanLimits {
+  const _PlanLimits({this.laps = 2, this.until, this.maxOccurrences});
+
+  final int laps;
+  final DateTime? until;
+  final int? maxOccurrences;
+}
+
+/// One enabled class placed on the week, parsed and formatted once.
+class _ClassSlot {
+  _ClassSlot({
+    required this.item,
+    required this.minuteOfWeek,
+    required this.title,
+    required this.body,
+    required this.startLabel,
+    required this.endLabel,
+    this.room,
+  });
+
+  final ClassItem item;
+  final int minuteOfWeek;
+  final String title;
+  final String body;
+  final String startLabel;
+  final String endLabel;
+  final String? room;
+}
+
+/// Enabled classes sorted by minute of the week (Monday 00:00 is 0).
+///
+/// Built once per schedule version. [nextAfter] finds the first slot after
+/// a time by binary search and walks forward around the week, so a plan
+/// neither re-parses start times nor expands each class on its own.
+class _WeeklyIndex {
+  _WeeklyIndex._(this.version, this.slots);
+
+  factory _WeeklyIndex.build(int version, List<ClassItem> classes) {
+    final slots = <_ClassSlot>[];
+    for (final item in classes) {
+      if (!item.enabled) continue;
+      if (item.day < DateTime.monday || item.day > DateTime.sunday) continue;
+      final start = NotifScheduler._parseTime(item.start);
+      if (start == null) continue;
+      slots.add(
+        _ClassSlot(
+          item: item,
+          minuteOfWeek:
+              (item.day - DateTime.monday) * _minutesPerDay + start.inMinutes,
+          title: NotifScheduler._titleForClass(item),
+          body: NotifScheduler._bodyForClass(item),
+          startLabel: NotifScheduler._formatTimeLabel(item.start),
+          endLabel: NotifScheduler._formatTimeLabel(item.end),
+          room: NotifScheduler._normalizeRoom(item.room),
+        ),
+      );
+    }
+    slots.sort((a, b) => a.minuteOfWeek.compareTo(b.minuteOfWeek));
+    return _WeeklyIndex._(version, slots);
+  }
+
+  static const _minutesPerDay = 24 * 60;
+  static _WeeklyIndex? _cached;
+
+  /// Index for [classes], reusing the last one built on this isolate when
+  /// the schedule version is unchanged.
+  static _WeeklyIndex of(List<ClassItem> classes) {
+    final version = scheduleVersion(classes);
+    final cached = _cached;
+    if (cached != null && cached.version == version) return cached;
+    return _cached = _WeeklyIndex.build(version, classes);
+  }
+
+  /// Changes whenever a field the plan reads changes. Only compared on the
+  /// isolate that computed it.
+  static int scheduleVersion(List<ClassItem> classes) => Object.hashAll(
+        classes.map(
+          (c) => Object.hash(
+            c.id,
+            c.day,
+            c.start,
+            c.end,
+            c.title,
+            c.code,
+            c.room,
+            c.enabled,
+            c.isCustom,
+          ),
+        ),
+      );
+
+  final int version;
+  final List<_ClassSlot> slots;
+
+  /// The next [count] class starts strictly after [now], in time order.
+  List<(_ClassSlot, DateTime)> nextAfter(DateTime now, int count) {
+    if (slots.isEmpty || count <= 0) return const [];
+    final nowMinute = (now.weekday - DateTime.monday) * _minutesPerDay +
+        now.hour * 60 +
+        now.minute;
+    // A start in the current minute has already begun.
+    var lo = 0;
+    var hi = slots.length;
+    while (lo < hi) {
+      final mid = (lo + hi) >> 1;
+      if (slots[mid].minuteOfWeek <= nowMinute) {
+        lo = mid + 1;
+      } else {
+        hi = mid;
+      }
+    }
+    final monday = now.day - (now.weekday - DateTime.monday);
+    final result = <(_ClassSlot, DateTime)>[];
+    for (var k = 0; k < count; k++) {
+      final position = lo + k;
+      final slot = slots[position % slots.length];
+      final week = position ~/ slots.length;
+      final minute = slot.minuteOfWeek;
+      result.add((
+        slot,
+        DateTime(
+          now.year,
+          now.month,
+          monday + week * 7 + minute ~/ _minutesPerDay,
+          (minute % _minutesPerDay) ~/ 60,
+          minute % 60,
+        ),
+      ));
+    }
+    return result;
+  }
+}
+
+class _PlanJob {
+  const _PlanJob({
+    required this.id,
+    required this.uid,
+    required this.version,
+    required this.leadMinutes,
+    required this.now,
+    required this.limits,
+    this.classes,
+  });
+
+  final int id;
+  final String uid;
+  final int version;
+  final int leadMinutes;
+  final DateTime now;
+  final _PlanLimits limits;
+
+  /// Null when the worker already indexed [version].
+  final List<ClassItem>? classes;
+}
+
+class _PlanResult {
+  const _PlanResult(this.id, this.plan);
+
+  final int id;
+  final _AlarmPlan? plan;
+}
+
+/// Builds alarm plans on one long-lived background isolate.
+///
+/// Schedules smaller than [minClasses] are built inline, where they finish
+/// faster than a round trip to the worker. Classes are sent only when the
+/// schedule version differs from the last one the worker indexed. If a
+/// build fails, that plan is built inline. If the worker cannot be spawned,
+/// exits, or does not answer within [jobTimeout], it is dropped and every
+/// later plan is built inline too.
+class _PlanWorker {
+  _PlanWorker._(this._isolate, this._replies, this._commands);
+
+  static const minClasses = 32;
+  static const jobTimeout = Duration(seconds: 10);
+
+  static _PlanWorker? _instance;
+  static Future<_PlanWorker?>? _starting;
+
+  /// Set when a spawn fails, so later resyncs do not wait on it again.
+  static var _disabled = false;
+
+  final Isolate _isolate;
+  final ReceivePort _replies;
+  final SendPort _commands;
+  final _pending = <int, Completer<_AlarmPlan?>>{};
+  var _nextJob = 0;
+  int? _sentVersion;
+
+  static Future<_AlarmPlan> buildPlan({
+    required String uid,
+    required List<ClassItem> classes,
+    required int leadMinutes,
+    required DateTime now,
+    _PlanLimits limits = const _PlanLimits(),
+  }) async {
+    _AlarmPlan? plan;
+    if (!kIsWeb && !_disabled && classes.length >= minClasses) {
+      final worker = await _ensure();
+      plan = await worker?._run(
+        uid: uid,
+        classes: classes,
+        leadMinutes: leadMinutes,
+        now: now,
+        limits: limits,
+      );
+    }
+    return plan ??
+        NotifScheduler._buildPlan(
+          uid: uid,
+          classes: classes,
+          leadMinutes: leadMinutes,
+          now: now,
+          limits: limits,
+        );
+  }
+
+  static Future<_PlanWorker?> _ensure() {
+    final running = _instance;
+    if (running != null) return Future<_PlanWorker?>.value(running);
+    return _starting ??= _spawn().whenComplete(() => _starting = null);
+  }
+
+  static Future<_PlanWorker?> _spawn() async {
+    final replies = ReceivePort();
+    final ready = Completer<SendPort>();
+    _PlanWorker? worker;
+    replies.listen((message) {
+      if (message is SendPort) {
+        ready.complete(message);
+      } else if (message is _PlanResult) {
+        worker?._complete(message);
+      } else if (message is List) {
+        // onError: [error, stack trace], both as strings.
+        AppLog.warn(
+          'NotifScheduler',
+          'Plan worker error; building plans inline',
+          error: message.first,
+        );
+      } else if (message == null) {
+        // onExit. Errors are fatal, so this follows any onError message.
+        if (!ready.isCompleted) {
+          ready.completeError(StateError('Plan worker exited'));
+        }
+        worker?._abandon();
+      }
+    });
+    Isolate? isolate;
+    try {
+      isolate = await Isolate.spawn(
+        _main,
+        replies.sendPort,
+        onExit: replies.sendPort,
+        onError: replies.sendPort,
+        debugName: 'NotifPlanWorker',
+      );
+      worker = _PlanWorker._(
+        isolate,
+        replies,
+        await ready.future.timeout(const Duration(seconds: 5)),
+      );
+      return _instance = worker;
+    } catch (error) {
+      AppLog.warn(
+        'NotifScheduler',
+        'Plan worker unavailable; building plans inline',
+        error: error,
+      );
+      isolate?.kill(priority: Isolate.immediate);
+      replies.close();
+      _disabled = true;
+      return null;
+    }
+  }
+
+  /// Kills the worker; plans still pending are built inline instead.
+  static void stop() {
+    _instance?._shutDown();
+  }
+
+  /// Drops a worker that exited or stopped answering, and builds every
+  /// later plan inline.
+  void _abandon() {
+    _disabled = true;
+    _shutDown();
+  }
+
+  void _shutDown() {
+    if (identical(_instance, this)) _instance = null;
+    _replies.close();
+    _isolate.kill(priority: Isolate.immediate);
+    for (final pending in _pending.values) {
+      pending.complete(null);
+    }
+    _pending.clear();
+  }
+
+  Future<_AlarmPlan?> _run({
+    required String uid,
+    required List<ClassItem> classes,
+    required int leadMinutes,
+    required DateTime now,
+    required _PlanLimits limits,
+  }) {
+    final version = _WeeklyIndex.scheduleVersion(classes);
+    final id = _nextJob++;
+    final done = Completer<_AlarmPlan?>();
+    _pending[id] = done;
+    _commands.send(
+      _PlanJob(
+        id: id,
+        uid: uid,
+        version: version,
+        leadMinutes: leadMinutes,
+        now: now,
+        limits: limits,
+        classes: version == _sentVersion ? null : classes,
+      ),
+    );
+    _sentVersion = version;
+    return done.future.timeout(
+      jobTimeout,
+      onTimeout: () {
+        AppLog.warn('NotifScheduler', 'Plan worker timed out; building inline');
+        _abandon();
+        return null;
+      },
+    );
+  }
+
+  void _complete(_PlanResult result) {
+    // A failed build may have lost the index; resend classes next time.
+    if (result.plan == null) _sentVersion = null;
+    _pending.remove(result.id)?.complete(result.plan);
+  }
+
+  static void _main(SendPort replies) {
+    final commands = ReceivePort();
+    replies.send(commands.sendPort);
+    _WeeklyIndex? index;
+    commands.listen((message) {
+      final job = message as _PlanJob;
+      _AlarmPlan? plan;
+      try {
+        final classes = job.classes;
+        if (classes != null) index = _WeeklyIndex.build(job.version, classes);
+        final current = index;
+        if (current != null && current.version == job.version) {
+          plan = NotifScheduler._planFromIndex(
+            current,
+            uid: job.uid,
+            leadMinutes: job.leadMinutes,
+            now: job.now,
+            limits: job.limits,
+          );
+        }
+      } catch (_) {
+        plan = null;
+      }
+      replies.send(_PlanResult(job.id, plan));
+    });
+  }
+}
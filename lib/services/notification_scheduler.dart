@@ -1,5 +1,6 @@
 import 'dart:async';
 import 'dart:convert';
+import 'dart:isolate';
 import 'dart:math';
 
 import 'package:flutter/foundation.dart';
@@ -8,23 +9,211 @@ import 'package:shared_preferences/shared_preferences.dart';
 import '../app/constants.dart';
 import '../utils/app_log.dart';
 import '../utils/local_notifs.dart';
+import 'data_sync.dart';
 import 'schedule_repository.dart';
 import 'user_scope.dart';
 
+part 'notification_plan.dart';
+
 class NotifScheduler {
   static const _nativeIdsKey = 'scheduled_native_alarm_ids';
+  static const _appOpensKey = 'notif_app_opens';
+  static const _trackedOpens = 8;
+
+  /// Native alarms armed at once on Android; later ones wait in the
+  /// persisted plan until the refill sentinel arms them.
+  static const nativeAlarmWindow = 16;
+
+  /// When true, an occurrence with a heads-up is armed as one native alarm
+  /// at the heads-up time; the native heads-up receiver arms the full-screen
+  /// alarm for the remaining minute. Halves AlarmManager registrations and
+  /// tracked ids per class. When false, both are armed up front.
+  static bool chainHeadsUp = true;
+
+  /// Age after which a schedule event triggers a full [resync] instead of
+  /// an incremental update, so drift between the baseline and the server
+  /// is bounded.
+  static const fullResyncInterval = Duration(hours: 6);
+
+  /// How far ahead [resync] plans. Adaptive by default: at least the two
+  /// weeks planned before, more for people who open the app rarely.
+  static AlarmHorizon horizon = const AlarmHorizon.adaptive();
+
+  /// Most alarms one [resync] plans. Android persists the plan natively and
+  /// arms [nativeAlarmWindow] at a time, far below AlarmManager's 500 per
+  /// app; iOS allows 64 pending notifications, shared with reminders.
+  static const androidAlarmBudget = 128;
+  static const iosAlarmBudget = 48;
+
   static void Function(int classId, int minutes)? onSnoozed;
 
+  static StreamSubscription<ScheduleEvent>? _eventSub;
+  static _PlanBaseline? _baseline;
+
+  // Single-flight resync state: at most one run at a time, and every
+  // trigger that arrives during a run is folded into one follow-up run.
+  static bool _resyncRunning = false;
+  static _ResyncRequest? _queuedResync;
+  static Completer<void>? _queuedDone;
+  static Future<void> _lastApply = Future<void>.value();
+
+  static int _resyncRequested = 0;
+  static int _resyncRuns = 0;
+  static int _resyncCoalesced = 0;
+  static int _resyncTotalMs = 0;
+  static int _resyncMaxMs = 0;
+  static int _resyncLastMs = 0;
+
   /// Initialize the scheduler and connect iOS notification action handlers.
   static void init() {
     // Connect iOS notification action buttons to snooze handler
     LocalNotifs.onSnoozeAction = (classId, minutes) async {
       await snooze(classId, minutes: minutes);
     };
+    _eventSub ??= DataSync.instance.scheduleEvents.listen((event) {
+      unawaited(
+        applyScheduleEvent(event).catchError((Object error) {
+          AppLog.warn(
+            'NotifScheduler',
+            'Schedule event not applied',
+            data: {'type': event.type.name, 'classId': event.classId},
+            error: error,
+          );
+        }),
+      );
+    });
+    unawaited(recordAppOpen());
   }
 
-  static Future<void> resync({ScheduleApi? api, String? userId}) async {
+  /// Notes an app start for [AlarmHorizon.adaptive]. Opens less than an
+  /// hour apart count once; the last [_trackedOpens] are kept.
+  static Future<void> recordAppOpen({DateTime? at}) async {
+    final sp = await SharedPreferences.getInstance();
+    final now = at ?? DateTime.now();
+    final opens = _readAppOpens(sp);
+    if (opens.isNotEmpty &&
+        now.difference(opens.last) < const Duration(hours: 1)) {
+      return;
+    }
+    opens.add(now);
+    final kept = opens.length > _trackedOpens
+        ? opens.sublist(opens.length - _trackedOpens)
+        : opens;
+    await sp.setStringList(
+      _appOpensKey,
+      [for (final open in kept) '${open.millisecondsSinceEpoch}'],
+    );
+  }
+
+  static List<DateTime> _readAppOpens(SharedPreferences sp) {
+    final raw = sp.getStringList(_appOpensKey) ?? const <String>[];
+    return [
+      for (final value in raw)
+        if (int.tryParse(value) case final millis?)
+          DateTime.fromMillisecondsSinceEpoch(millis),
+    ];
+  }
+
+  /// Resolves [horizon] and the platform budget for a plan built at [now].
+  static _PlanLimits _planLimits(SharedPreferences sp, DateTime now) {
+    final budget = LocalNotifs.isAndroidContext
+        ? androidAlarmBudget
+        : iosAlarmBudget;
+    // A chained occurrence is one alarm; otherwise heads-up plus alarm.
+    final perOccurrence = LocalNotifs.isAndroidContext && chainHeadsUp ? 1 : 2;
+    final maxOccurrences = budget ~/ perOccurrence;
+    final count = horizon.occurrences;
+    if (count != null) {
+      return _PlanLimits(laps: max(1, count), maxOccurrences: maxOccurrences);
+    }
+    final span = horizon.span ??
+        AlarmHorizon.adaptiveSpan(_readAppOpens(sp), now);
+    return _PlanLimits(
+      laps: span.inDays ~/ 7 + 1,
+      until: now.add(span),
+      maxOccurrences: maxOccurrences,
+    );
+  }
+
+  /// Replans every class and brings the tracked alarms in line.
+  ///
+  /// Runs one at a time. A call made while a run is in progress queues a
+  /// follow-up run and completes with it; further calls before that run
+  /// starts join it, and the most recent [api] and [userId] are used.
+  static Future<void> resync({ScheduleApi? api, String? userId}) {
+    _resyncRequested++;
+    final request = _ResyncRequest(api: api, userId: userId);
+    if (_resyncRunning) {
+      if (_queuedResync != null) _resyncCoalesced++;
+      _queuedResync = request;
+      return (_queuedDone ??= Completer<void>()).future;
+    }
+    _resyncRunning = true;
+    final done = Completer<void>();
+    unawaited(_runResyncs(request, done));
+    return done.future;
+  }
+
+  /// Counters for [resync]: calls, actual runs, calls folded into an
+  /// already queued run, and run durations in milliseconds. `saved` is
+  /// the number of calls that did not need a run of their own.
+  static Map<String, dynamic> resyncStats() => {
+        'requested': _resyncRequested,
+        'runs': _resyncRuns,
+        'coalesced': _resyncCoalesced,
+        'saved': _resyncRequested - _resyncRuns,
+        'running': _resyncRunning,
+        'totalMs': _resyncTotalMs,
+        'maxMs': _resyncMaxMs,
+        'lastMs': _resyncLastMs,
+        'avgMs': _resyncRuns == 0 ? 0 : _resyncTotalMs ~/ _resyncRuns,
+      };
+
+  @visibleForTesting
+  static void resetResyncStats() {
+    _resyncRequested = 0;
+    _resyncRuns = 0;
+    _resyncCoalesced = 0;
+    _resyncTotalMs = 0;
+    _resyncMaxMs = 0;
+    _resyncLastMs = 0;
+  }
+
+  static Future<void> _runResyncs(
+    _ResyncRequest first,
+    Completer<void> firstDone,
+  ) async {
+    var request = first;
+    var done = firstDone;
+    while (true) {
+      final watch = Stopwatch()..start();
+      try {
+        // Let an incremental update that already started finish first.
+        await _lastApply;
+        await _resyncOnce(api: request.api, userId: request.userId);
+        done.complete();
+      } catch (error, stack) {
+        done.completeError(error, stack);
+      }
+      final elapsed = watch.elapsedMilliseconds;
+      _resyncRuns++;
+      _resyncTotalMs += elapsed;
+      _resyncLastMs = elapsed;
+      _resyncMaxMs = max(_resyncMaxMs, elapsed);
+
+      final queued = _queuedResync;
+      if (queued == null) break;
+      request = queued;
+      done = _queuedDone!;
+      _queuedResync = null;
+      _queuedDone = null;
+    }
+    _resyncRunning = false;
+  }
+
+  static Future<void> _resyncOnce({ScheduleApi? api, String? userId}) async {
     if (!_isMobileContext()) return;
+    _baseline = null;
 
     final sp = await SharedPreferences.getInstance();
     await ensurePreferenceMigration(prefs: sp);
@@ -63,24 +252,55 @@ class NotifScheduler {
     final scheduleApi = api ?? ScheduleApi();
     final classes = await scheduleApi.getMyClasses();
 
-    final plan = _buildPlan(
+    final now = DateTime.now();
+    final limits = _planLimits(sp, now);
+    final plan = await _PlanWorker.buildPlan(
       uid: uid,
       classes: classes,
       leadMinutes: leadMinutes,
-      now: DateTime.now(),
+      now: now,
+      limits: limits,
     );
 
-    final expectedNative = <int>{};
+    final batch = <NativeAlarmRequest>[];
+    final byClass = <String, List<NativeAlarmRequest>>{
+      for (final item in classes) _classKey(item): <NativeAlarmRequest>[],
+    };
     for (final req in plan.requests) {
-      if (req.shouldScheduleAlarm(plan.now)) {
-        expectedNative.add(req.nativeId);
-      }
-      if (req.preNotifId != null && req.shouldScheduleHeadsUp(plan.now)) {
-        expectedNative.add(req.preNotifId!);
-      }
+      final natives = _nativeRequestsFor(req, plan.now);
+      batch.addAll(natives);
+      byClass[req.classKey]?.addAll(natives);
     }
+    final expectedNative = batch.map((r) => r.id).toSet();
+    final baseline = _PlanBaseline(
+      uid: uid,
+      leadMinutes: leadMinutes,
+      builtAt: plan.now,
+      limits: limits,
+      truncated: plan.truncated,
+      classes: {for (final item in classes) _classKey(item): item},
+      native: byClass,
+    );
 
     final previousNative = _readIdSet(sp, _nativeIdsKey, uid);
+    final actualNative = <int>{};
+
+    if (LocalNotifs.isAndroidContext) {
+      // Native side diffs against what it already armed by content hash.
+      final reconciled = await LocalNotifs.reconcileNativeAlarms(
+        batch,
+        owned: previousNative,
+        userId: uid,
+        window: nativeAlarmWindow,
+      );
+      if (reconciled != null) {
+        actualNative.addAll(reconciled);
+        await _storeIdSet(sp, _nativeIdsKey, actualNative, uid);
+        _baseline = baseline;
+        return;
+      }
+    }
+
     final diff = diffScheduled(
       previousNative: previousNative,
       previousNotif: const <int>{},
@@ -90,12 +310,37 @@ class NotifScheduler {
 
     await LocalNotifs.cancelManyNotifications(diff.nativeToCancel, userId: uid);
 
-    final actualNative = <int>{};
-    for (final req in plan.requests) {
-      if (req.preNotifId != null && req.shouldScheduleHeadsUp(plan.now)) {
-        final scheduledHeadsUp = await LocalNotifs.scheduleNotificationAt(
-          id: req.preNotifId!,
-          at: req.preNotifAt!,
+    if (LocalNotifs.isAndroidContext) {
+      actualNative.addAll(
+        await LocalNotifs.scheduleNativeAlarmsBatch(batch, userId: uid),
+      );
+      _baseline = baseline;
+    } else {
+      for (final req in plan.requests) {
+        if (req.preNotifId != null && req.shouldScheduleHeadsUp(plan.now)) {
+          final scheduledHeadsUp = await LocalNotifs.scheduleNotificationAt(
+            id: req.preNotifId!,
+            at: req.preNotifAt!,
+            title: req.title,
+            body: req.body,
+            classId: req.classId,
+            occurrenceKey: req.occurrenceKey,
+            subject: req.subject,
+            room: req.room,
+            startTime: req.startLabel,
+            endTime: req.endLabel,
+            userId: uid,
+          );
+          if (scheduledHeadsUp) {
+            actualNative.add(req.preNotifId!);
+          }
+        }
+
+        if (!req.shouldScheduleAlarm(plan.now)) continue;
+
+        final scheduled = await LocalNotifs.scheduleNotificationAt(
+          id: req.nativeId,
+          at: req.alarmAt,
           title: req.title,
           body: req.body,
           classId: req.classId,
@@ -106,32 +351,191 @@ class NotifScheduler {
           endTime: req.endLabel,
           userId: uid,
         );
-        if (scheduledHeadsUp) {
-          actualNative.add(req.preNotifId!);
+        if (scheduled) {
+          actualNative.add(req.nativeId);
         }
       }
+    }
 
-      if (!req.shouldScheduleAlarm(plan.now)) continue;
-
-      final scheduled = await LocalNotifs.scheduleNotificationAt(
-        id: req.nativeId,
-        at: req.alarmAt,
-        title: req.title,
-        body: req.body,
-        classId: req.classId,
-        occurrenceKey: req.occurrenceKey,
-        subject: req.subject,
-        room: req.room,
-        startTime: req.startLabel,
-        endTime: req.endLabel,
-        userId: uid,
+    await _storeIdSet(sp, _nativeIdsKey, actualNative, uid);
+  }
+
+  /// Replans only the class named by [event] and sends the difference to
+  /// the native side. Falls back to a full [resync] when there is no
+  /// baseline from an earlier Android resync, the user or lead time has
+  /// changed, the baseline is older than [fullResyncInterval], or the id
+  /// does not name exactly one known class, or the update fails (the
+  /// baseline is then dropped). Events without a class id (refresh, class
+  /// added, cache invalidated) are left to the callers' own resync.
+  static Future<void> applyScheduleEvent(
+    ScheduleEvent event, {
+    ScheduleApi? api,
+  }) async {
+    if (!_isMobileContext()) return;
+    if (event.classId == null || !_incrementalTypes.contains(event.type)) {
+      return;
+    }
+    // A running resync rebuilds the baseline; join its follow-up instead.
+    if (_resyncRunning) return resync(api: api, userId: event.userId);
+    final run = _lastApply.then((_) => _applyScheduleEvent(event, api: api));
+    _lastApply = run.then((_) {}, onError: (Object _) {});
+    bool applied;
+    try {
+      applied = await run;
+    } catch (error) {
+      AppLog.warn(
+        'NotifScheduler',
+        'Incremental update failed; resyncing',
+        data: {'classId': event.classId},
+        error: error,
       );
-      if (scheduled) {
-        actualNative.add(req.nativeId);
+      // The native side may hold part of the delta; rebuild from scratch.
+      _baseline = null;
+      applied = false;
+    }
+    // Outside the apply chain, since a resync waits for that chain.
+    if (!applied) await resync(api: api, userId: event.userId);
+  }
+
+  /// Returns false when the event needs a full resync instead.
+  static Future<bool> _applyScheduleEvent(
+    ScheduleEvent event, {
+    ScheduleApi? api,
+  }) async {
+    final classId = event.classId!;
+
+    final sp = await SharedPreferences.getInstance();
+    final uid = event.userId ?? UserScope.currentUserId();
+    final leadMinutes = _readPositive(
+          sp.getInt(AppConstants.keyLeadMinutes),
+        ) ??
+        AppConstants.defaultLeadMinutes;
+    final now = DateTime.now();
+    final baseline = _baseline;
+    final keys = baseline?.keysFor(classId) ?? const <String>[];
+    if (!LocalNotifs.isAndroidContext ||
+        baseline == null ||
+        uid == null ||
+        baseline.uid != uid ||
+        baseline.leadMinutes != leadMinutes ||
+        baseline.truncated ||
+        now.difference(baseline.builtAt) > fullResyncInterval ||
+        keys.length != 1) {
+      return false;
+    }
+
+    final key = keys.single;
+    final current = baseline.classes[key]!;
+    ClassItem? next;
+    switch (event.type) {
+      case ScheduleChangeType.classEnabled:
+      case ScheduleChangeType.classDisabled:
+        next = current.copyWith(
+          enabled: event.type == ScheduleChangeType.classEnabled,
+        );
+        break;
+      case ScheduleChangeType.classDeleted:
+        next = null;
+        break;
+      default:
+        // Events carry only the id; an edit needs the class itself.
+        final classes = await (api ?? ScheduleApi()).getMyClasses();
+        for (final item in classes) {
+          if (_classKey(item) == key) {
+            next = item;
+            break;
+          }
+        }
+    }
+
+    final fresh = <NativeAlarmRequest>[];
+    if (next != null) {
+      // Built uncached so the full schedule's index stays current.
+      final plan = _planFromIndex(
+        _WeeklyIndex.build(0, [next]),
+        uid: uid,
+        leadMinutes: leadMinutes,
+        now: now,
+        limits: baseline.limits,
+      );
+      for (final req in plan.requests) {
+        fresh.addAll(_nativeRequestsFor(req, now));
       }
     }
 
-    await _storeIdSet(sp, _nativeIdsKey, actualNative, uid);
+    final previous = {
+      for (final req in baseline.native[key] ?? const <NativeAlarmRequest>[])
+        req.id: req.contentHash,
+    };
+    final freshIds = fresh.map((r) => r.id).toSet();
+    final removed = previous.keys.where((id) => !freshIds.contains(id)).toSet();
+    final changed =
+        fresh.where((r) => previous[r.id] != r.contentHash).toList();
+
+    // Updated only once the alarms match, so a failed update leaves the
+    // baseline as it was.
+    final updated = next;
+    void updateBaseline() {
+      if (updated == null) {
+        baseline.classes.remove(key);
+        baseline.native.remove(key);
+      } else {
+        baseline.classes[key] = updated;
+        baseline.native[key] = fresh;
+      }
+    }
+
+    if (removed.isEmpty && changed.isEmpty) {
+      updateBaseline();
+      return true;
+    }
+
+    final active = await LocalNotifs.applyNativeAlarmDelta(
+      changed,
+      removed: removed,
+      userId: uid,
+    );
+    if (active != null) {
+      await _storeIdSet(sp, _nativeIdsKey, active, uid);
+      updateBaseline();
+      return true;
+    }
+
+    // No native delta (tests, missing plugin): cancel and re-arm directly.
+    final replaced = {
+      ...removed,
+      ...changed.map((r) => r.id).where(previous.containsKey),
+    };
+    await LocalNotifs.cancelManyNotifications(replaced, userId: uid);
+    final scheduled =
+        await LocalNotifs.scheduleNativeAlarmsBatch(changed, userId: uid);
+    final ids = _readIdSet(sp, _nativeIdsKey, uid)
+      ..removeAll(replaced)
+      ..addAll(scheduled);
+    await _storeIdSet(sp, _nativeIdsKey, ids, uid);
+    updateBaseline();
+    return true;
+  }
+
+  static const _incrementalTypes = {
+    ScheduleChangeType.classUpdated,
+    ScheduleChangeType.classDeleted,
+    ScheduleChangeType.classEnabled,
+    ScheduleChangeType.classDisabled,
+  };
+
+  @visibleForTesting
+  static void resetIncrementalState() {
+    _baseline = null;
+  }
+
+  /// Drops the cached weekly index, stops the plan worker, and forgets a
+  /// failed spawn, so the next plan is built from scratch.
+  @visibleForTesting
+  static void debugResetPlanner() {
+    _WeeklyIndex._cached = null;
+    _PlanWorker.stop();
+    _PlanWorker._disabled = false;
   }
 
   static Future<void> snooze(
@@ -263,6 +667,9 @@ class NotifScheduler {
     String? userId,
   ]) async {
     if (userId == null) {
+      // One native pass cancels everything; per-id cancels are only needed
+      // when the bulk path is unavailable (tests, missing plugin).
+      final bulk = await LocalNotifs.cancelAllNativeAlarms();
       final raw = sp.getString(_nativeIdsKey);
       if (raw != null) {
         final decoded = _decodeScoped(raw);
@@ -271,12 +678,14 @@ class NotifScheduler {
               .map((e) => e is int ? e : int.tryParse('$e'))
               .whereType<int>()
               .toSet();
-          if (ids.isNotEmpty) {
+          if (ids.isEmpty) continue;
+          if (bulk) {
+            await LocalNotifs.forgetScheduledIds(ids, userId: entry.key);
+          } else {
             await LocalNotifs.cancelMany(ids, userId: entry.key);
           }
         }
       }
-      await LocalNotifs.cancelAllNativeAlarms();
       await sp.remove(_nativeIdsKey);
       return;
     }
@@ -352,6 +761,25 @@ class NotifScheduler {
     return <String, dynamic>{};
   }
 
+  /// Native requests for one occurrence: the chained alarm, or the
+  /// heads-up and alarm separately (see [chainHeadsUp]).
+  static List<NativeAlarmRequest> _nativeRequestsFor(
+    _AlarmRequest req,
+    DateTime now,
+  ) {
+    final headsUp = req.preNotifId != null && req.shouldScheduleHeadsUp(now);
+    if (headsUp && chainHeadsUp) {
+      return [req.toNative(chained: true)];
+    }
+    return [
+      if (headsUp) req.toNative(headsUp: true),
+      if (req.shouldScheduleAlarm(now)) req.toNative(),
+    ];
+  }
+
+  static String _classKey(ClassItem item) =>
+      '${item.isCustom ? 'custom' : 'class'}:${item.id}';
+
   static int? _readPositive(int? value) {
     if (value == null || value <= 0) return null;
     return value;
@@ -362,35 +790,64 @@ class NotifScheduler {
     required List<ClassItem> classes,
     required int leadMinutes,
     required DateTime now,
+    _PlanLimits limits = const _PlanLimits(),
+  }) {
+    return _planFromIndex(
+      _WeeklyIndex.of(classes),
+      uid: uid,
+      leadMinutes: leadMinutes,
+      now: now,
+      limits: limits,
+    );
+  }
+
+  /// Upcoming occurrences of every indexed class within [limits], in
+  /// alarm order.
+  ///
+  /// Each lap of the week visits every class once, already in start order
+  /// (the lead is the same for all), so the earliest occurrences come
+  /// first and the budget is applied by stopping the walk.
+  static _AlarmPlan _planFromIndex(
+    _WeeklyIndex index, {
+    required String uid,
+    required int leadMinutes,
+    required DateTime now,
+    _PlanLimits limits = const _PlanLimits(),
   }) {
     final requests = <_AlarmRequest>[];
     final lead = Duration(minutes: max(0, leadMinutes));
-    for (final item in classes) {
-      if (!item.enabled) continue;
-      final start = _parseTime(item.start);
-      if (start == null) continue;
-      final occurrence = _nextOccurrences(now, item.day, start, count: 2);
-      for (final classStart in occurrence) {
-        final alarmAt = classStart.subtract(lead);
-        if (!alarmAt.isAfter(now)) continue;
-        final title = _titleForClass(item);
-
-        DateTime? preNotifAt;
-        int? preNotifId;
-        final headsUpAt = alarmAt.subtract(const Duration(minutes: 1));
-        if (headsUpAt.isAfter(now)) {
-          preNotifAt = headsUpAt;
-          preNotifId = _nativeId(
-            uid: uid,
-            classId: item.id,
-            occurrence: headsUpAt,
-            isCustom: item.isCustom,
-            isHeadsUp: true,
-          );
-        }
+    final until = limits.until;
+    final maxOccurrences = limits.maxOccurrences;
+    var truncated = false;
+    for (final (slot, classStart)
+        in index.nextAfter(now, index.slots.length * limits.laps)) {
+      if (until != null && classStart.isAfter(until)) break;
+      final alarmAt = classStart.subtract(lead);
+      if (!alarmAt.isAfter(now)) continue;
+      if (maxOccurrences != null && requests.length >= maxOccurrences) {
+        truncated = true;
+        break;
+      }
+      final item = slot.item;
+
+      DateTime? preNotifAt;
+      int? preNotifId;
+      final headsUpAt = alarmAt.subtract(const Duration(minutes: 1));
+      if (headsUpAt.isAfter(now)) {
+        preNotifAt = headsUpAt;
+        preNotifId = _nativeId(
+          uid: uid,
+          classId: item.id,
+          occurrence: headsUpAt,
+          isCustom: item.isCustom,
+          isHeadsUp: true,
+        );
+      }
 
-        final request = _AlarmRequest(
+      requests.add(
+        _AlarmRequest(
           classId: item.id,
+          classKey: _classKey(item),
           nativeId: _nativeId(
             uid: uid,
             classId: item.id,
@@ -399,52 +856,19 @@ class NotifScheduler {
             isHeadsUp: false,
           ),
           alarmAt: alarmAt,
-          title: title,
-          body: _bodyForClass(item),
+          title: slot.title,
+          body: slot.body,
           occurrenceKey: _occurrenceKey(classStart),
-          subject: title,
-          room: _normalizeRoom(item.room),
-          startLabel: _formatTimeLabel(item.start),
-          endLabel: _formatTimeLabel(item.end),
+          subject: slot.title,
+          room: slot.room,
+          startLabel: slot.startLabel,
+          endLabel: slot.endLabel,
           preNotifId: preNotifId,
           preNotifAt: preNotifAt,
-        );
-        requests.add(request);
-      }
-    }
-    requests.sort((a, b) => a.alarmAt.compareTo(b.alarmAt));
-    return _AlarmPlan(now: now, requests: requests);
-  }
-
-  static List<DateTime> _nextOccurrences(
-    DateTime now,
-    int dayOfWeek,
-    Duration start, {
-    int count = 1,
-  }) {
-    if (dayOfWeek < DateTime.monday || dayOfWeek > DateTime.sunday) {
-      return <DateTime>[];
-    }
-    final results = <DateTime>[];
-    var base = DateTime(
-      now.year,
-      now.month,
-      now.day,
-      start.inHours,
-      start.inMinutes.remainder(60),
-    );
-    var daysToAdd = (dayOfWeek - now.weekday) % 7;
-    if (daysToAdd < 0) daysToAdd += 7;
-    base = base.add(Duration(days: daysToAdd));
-    while (results.length < count) {
-      if (!base.isAfter(now)) {
-        base = base.add(const Duration(days: 7));
-        continue;
-      }
-      results.add(base);
-      base = base.add(const Duration(days: 7));
+        ),
+      );
     }
-    return results;
+    return _AlarmPlan(now: now, requests: requests, truncated: truncated);
   }
 
   static Duration? _parseTime(String value) {
@@ -515,14 +939,20 @@ class NotifScheduler {
     required bool isCustom,
     required bool isHeadsUp,
   }) {
-    final millis = occurrence.millisecondsSinceEpoch;
-    final hash = Object.hashAll([
+    // FNV-1a like [NativeAlarmRequest.contentHash]: Object.hashAll is not
+    // stable across isolates, and plans may be built on the plan worker.
+    final source = [
       uid,
       classId,
-      millis,
+      occurrence.millisecondsSinceEpoch,
       isCustom ? 1 : 0,
       isHeadsUp ? 1 : 0,
-    ]);
+    ].join('\u0000');
+    var hash = 0x811c9dc5;
+    for (final byte in utf8.encode(source)) {
+      hash ^= byte;
+      hash = (hash * 0x01000193) & 0xffffffff;
+    }
     return hash & 0x7fffffff;
   }
 
@@ -640,15 +1070,61 @@ class SchedulePreview {
 }
 
 class _AlarmPlan {
-  _AlarmPlan({required this.now, required this.requests});
+  _AlarmPlan({
+    required this.now,
+    required this.requests,
+    this.truncated = false,
+  });
 
   final DateTime now;
   final List<_AlarmRequest> requests;
+
+  /// Whether the alarm budget cut the horizon short.
+  final bool truncated;
+}
+
+class _ResyncRequest {
+  const _ResyncRequest({this.api, this.userId});
+
+  final ScheduleApi? api;
+  final String? userId;
+}
+
+/// Per-class result of the last full Android resync, patched by
+/// [NotifScheduler.applyScheduleEvent].
+class _PlanBaseline {
+  _PlanBaseline({
+    required this.uid,
+    required this.leadMinutes,
+    required this.builtAt,
+    required this.limits,
+    required this.truncated,
+    required this.classes,
+    required this.native,
+  });
+
+  final String uid;
+  final int leadMinutes;
+  final DateTime builtAt;
+
+  /// Horizon of the full plan; a single class is replanned within it.
+  final _PlanLimits limits;
+
+  /// A budget-cut plan is global, so events fall back to a full resync.
+  final bool truncated;
+  final Map<String, ClassItem> classes;
+  final Map<String, List<NativeAlarmRequest>> native;
+
+  List<String> keysFor(int classId) => [
+        for (final entry in classes.entries)
+          if (entry.value.id == classId) entry.key,
+      ];
 }
 
 class _AlarmRequest {
   _AlarmRequest({
     required this.classId,
+    required this.classKey,
     required this.nativeId,
     required this.alarmAt,
     required this.title,
@@ -663,6 +1139,7 @@ class _AlarmRequest {
   });
 
   final int classId;
+  final String classKey;
   final int nativeId;
   final DateTime alarmAt;
   final String title;
@@ -677,6 +1154,24 @@ class _AlarmRequest {
 
   bool shouldScheduleAlarm(DateTime now) => alarmAt.isAfter(now);
 
+  /// With [chained], the alarm's own id is armed at the heads-up time and
+  /// carries [alarmAt] as its chain time (see [NotifScheduler.chainHeadsUp]).
+  NativeAlarmRequest toNative({bool headsUp = false, bool chained = false}) =>
+      NativeAlarmRequest(
+        id: headsUp ? preNotifId! : nativeId,
+        at: headsUp || chained ? preNotifAt! : alarmAt,
+        title: title,
+        body: body,
+        classId: classId,
+        occurrenceKey: occurrenceKey,
+        subject: subject,
+        room: room,
+        startTime: startLabel,
+        endTime: endLabel,
+        headsUpOnly: headsUp || chained,
+        chainAt: chained ? alarmAt : null,
+      );
+
   bool shouldScheduleHeadsUp(DateTime now) =>
       preNotifAt != null && preNotifAt!.isAfter(now);
 }
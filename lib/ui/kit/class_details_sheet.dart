@@ -2,7 +2,6 @@ import 'package:flutter/material.dart';
 import 'package:intl/intl.dart';
 
 import '../../services/schedule_repository.dart' as sched;
-import '../../services/notification_scheduler.dart';
 import '../../services/telemetry_service.dart';
 import '../kit/kit.dart';
 import '../theme/tokens.dart';
@@ -100,7 +99,6 @@ class _ClassDetailsSheetState extends State<ClassDetailsSheet> {
         enable ? 'Class enabled.' : 'Class disabled.',
         type: AppSnackBarType.success,
       );
-      await NotifScheduler.resync(api: widget.api);
     } catch (error) {
       _toast(
         'Failed to update class: $error',
@@ -142,7 +140,6 @@ class _ClassDetailsSheetState extends State<ClassDetailsSheet> {
         'Custom class deleted.',
         type: AppSnackBarType.success,
       );
-      await NotifScheduler.resync(api: widget.api);
       if (mounted) {
         Navigator.of(context).pop();
       }
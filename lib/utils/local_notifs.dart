@@ -193,6 +193,7 @@ class LocalNotifs {
     String? startTime,
     String? endTime,
     bool headsUpOnly = false,
+    DateTime? chainAt,
     String? userId,
   }) async {
     if (!isAndroidContext) return false;
@@ -249,6 +250,7 @@ class LocalNotifs {
               'startTime': startTime,
               'endTime': endTime,
               'headsUpOnly': headsUpOnly,
+              if (chainAt != null) 'chainAtMillis': chainAt.millisecondsSinceEpoch,
             },
           ) ??
           false;
@@ -272,6 +274,225 @@ class LocalNotifs {
     }
   }
 
+  /// Schedule many exact alarms with a single platform-channel call.
+  ///
+  /// Returns the ids that were armed. Bookkeeping (class map, ack clears) is
+  /// written once for the whole batch instead of once per alarm.
+  static Future<Set<int>> scheduleNativeAlarmsBatch(
+    List<NativeAlarmRequest> requests, {
+    String? userId,
+  }) async {
+    if (!isAndroidContext) return <int>{};
+    final now = DateTime.now();
+    final pending = requests.where((r) => r.at.isAfter(now)).toList();
+    if (pending.isEmpty) return <int>{};
+
+    if (debugScheduleOverride != null || debugForceAndroid) {
+      return _scheduleEach(pending, userId: userId);
+    }
+
+    Map<Object?, Object?>? results;
+    try {
+      results = await _channel.invokeMethod<Map<Object?, Object?>>(
+        'scheduleNativeAlarmsBatch',
+        {'alarms': pending.map((r) => r.toMap()).toList()},
+      );
+    } on MissingPluginException {
+      return _scheduleEach(pending, userId: userId);
+    } on PlatformException catch (err, stack) {
+      _logScheduleError(id: pending.first.id, error: err, stack: stack);
+      return <int>{};
+    }
+
+    final scheduled = <int>{};
+    results?.forEach((key, value) {
+      final id = key is int ? key : int.tryParse('$key');
+      if (id != null && value == true) scheduled.add(id);
+    });
+    final armed = pending.where((r) => scheduled.contains(r.id)).toList();
+    await _recordScheduledIds(armed, userId: userId);
+    if (debugLogExactAlarms) {
+      AppLog.debug(
+        'LocalNotifs',
+        'Scheduled alarm batch',
+        data: {'requested': pending.length, 'scheduled': scheduled.length},
+      );
+    }
+    return scheduled;
+  }
+
+  /// Hand the full desired alarm set to the native reconciler.
+  ///
+  /// Native code compares each alarm's [NativeAlarmRequest.contentHash] with
+  /// what it already armed and only touches AlarmManager for added, changed,
+  /// or stale alarms; ids in [owned] that are not desired are cancelled.
+  /// With a positive [window], native code persists the whole plan but arms
+  /// only the earliest [window] alarms, plus a sentinel that arms the next
+  /// window when the first half has fired.
+  ///
+  /// Returns the ids armed afterwards, or null when the native reconciler is
+  /// unavailable and the caller should fall back to cancel + schedule.
+  static Future<Set<int>?> reconcileNativeAlarms(
+    List<NativeAlarmRequest> desired, {
+    Set<int> owned = const <int>{},
+    String? userId,
+    int window = 0,
+  }) async {
+    if (!isAndroidContext) return null;
+    if (debugScheduleOverride != null ||
+        debugCancelManyOverride != null ||
+        debugForceAndroid) {
+      return null;
+    }
+    final now = DateTime.now();
+    final pending = desired.where((r) => r.at.isAfter(now)).toList();
+
+    Map<Object?, Object?>? result;
+    try {
+      result = await _channel.invokeMethod<Map<Object?, Object?>>(
+        'reconcileNativeAlarms',
+        {
+          'alarms': pending.map((r) => r.toMap()).toList(),
+          'owned': owned.toList(),
+          'window': window,
+        },
+      );
+    } on MissingPluginException {
+      return null;
+    } on PlatformException catch (err) {
+      AppLog.warn(
+        'LocalNotifs',
+        'Native reconcile failed',
+        data: {'count': pending.length},
+        error: err,
+      );
+      return null;
+    }
+
+    final armed = _intSet(result?['armed']);
+    final cancelled = _intSet(result?['cancelled']);
+    final failed = _intSet(result?['failed']);
+    await _removeScheduledIds(cancelled, userId: userId);
+    await _recordScheduledIds(
+      pending.where((r) => armed.contains(r.id)).toList(),
+      userId: userId,
+    );
+    if (debugLogExactAlarms) {
+      AppLog.debug(
+        'LocalNotifs',
+        'Reconciled native alarms',
+        data: {
+          'armed': armed.length,
+          'cancelled': cancelled.length,
+          'unchanged': result?['unchanged'],
+          'failed': failed.length,
+          'deferred': result?['deferred'],
+        },
+      );
+    }
+    final active = result?['active'];
+    if (active is List) {
+      return _intSet(active);
+    }
+    return pending.map((r) => r.id).where((id) => !failed.contains(id)).toSet();
+  }
+
+  /// Patch the native plan with one class's changes instead of sending the
+  /// full desired set.
+  ///
+  /// [upserts] replace their plan entries and [removed] ids are dropped and
+  /// cancelled; native code then reconciles the armed window as a refill
+  /// would. Returns the ids armed afterwards, or null when the delta cannot
+  /// be applied natively (no windowed plan, no plugin) and the caller
+  /// should fall back.
+  static Future<Set<int>?> applyNativeAlarmDelta(
+    List<NativeAlarmRequest> upserts, {
+    Set<int> removed = const <int>{},
+    String? userId,
+  }) async {
+    if (!isAndroidContext) return null;
+    if (debugScheduleOverride != null ||
+        debugCancelManyOverride != null ||
+        debugForceAndroid) {
+      return null;
+    }
+    final now = DateTime.now();
+    final pending = upserts.where((r) => r.at.isAfter(now)).toList();
+
+    Map<Object?, Object?>? result;
+    try {
+      result = await _channel.invokeMethod<Map<Object?, Object?>>(
+        'applyNativeAlarmDelta',
+        {
+          'alarms': pending.map((r) => r.toMap()).toList(),
+          'removed': removed.toList(),
+        },
+      );
+    } on MissingPluginException {
+      return null;
+    } on PlatformException catch (err) {
+      AppLog.warn(
+        'LocalNotifs',
+        'Native alarm delta failed',
+        data: {'upserts': pending.length, 'removed': removed.length},
+        error: err,
+      );
+      return null;
+    }
+    if (result == null) return null;
+
+    final armed = _intSet(result['armed']);
+    await _removeScheduledIds(_intSet(result['cancelled']), userId: userId);
+    await _recordScheduledIds(
+      pending.where((r) => armed.contains(r.id)).toList(),
+      userId: userId,
+    );
+    if (debugLogExactAlarms) {
+      AppLog.debug(
+        'LocalNotifs',
+        'Applied native alarm delta',
+        data: {
+          'armed': armed.length,
+          'cancelled': _intSet(result['cancelled']).length,
+          'unchanged': result['unchanged'],
+          'deferred': result['deferred'],
+        },
+      );
+    }
+    return _intSet(result['active']);
+  }
+
+  static Set<int> _intSet(Object? raw) {
+    if (raw is! List) return <int>{};
+    return raw.whereType<num>().map((v) => v.toInt()).toSet();
+  }
+
+  static Future<Set<int>> _scheduleEach(
+    List<NativeAlarmRequest> requests, {
+    String? userId,
+  }) async {
+    final scheduled = <int>{};
+    for (final r in requests) {
+      final ok = await scheduleNativeAlarmAt(
+        id: r.id,
+        at: r.at,
+        title: r.title,
+        body: r.body,
+        classId: r.classId,
+        occurrenceKey: r.occurrenceKey,
+        subject: r.subject,
+        room: r.room,
+        startTime: r.startTime,
+        endTime: r.endTime,
+        headsUpOnly: r.headsUpOnly,
+        chainAt: r.chainAt,
+        userId: userId,
+      );
+      if (ok) scheduled.add(r.id);
+    }
+    return scheduled;
+  }
+
   /// Schedule a notification at the specified time (cross-platform).
   /// Uses native alarms on Android, flutter_local_notifications on iOS.
   static Future<bool> scheduleNotificationAt({
@@ -427,8 +648,14 @@ class LocalNotifs {
     Set<int> ids, {
     String? userId,
   }) async {
-    for (final id in ids) {
-      await cancelScheduledNotification(id, silent: true, userId: userId);
+    if (ids.isEmpty) return;
+    if ((Platform.isAndroid || debugForceAndroid) &&
+        debugCancelOverride == null) {
+      await cancelNativeAlarmsBatch(ids, userId: userId);
+    } else {
+      for (final id in ids) {
+        await cancelScheduledNotification(id, silent: true, userId: userId);
+      }
     }
     if (ids.isNotEmpty && debugLogExactAlarms) {
       final sample = ids.take(5).join(', ');
@@ -488,6 +715,35 @@ class LocalNotifs {
     await _removeScheduledId(id, userId: userId);
   }
 
+  /// Cancel many native alarms with a single platform-channel call.
+  static Future<void> cancelNativeAlarmsBatch(
+    Set<int> ids, {
+    String? userId,
+  }) async {
+    if (!isAndroidContext || ids.isEmpty) return;
+    if (!debugForceAndroid) {
+      try {
+        await _channel.invokeMethod(
+          'cancelNativeAlarmsBatch',
+          {'ids': ids.toList()},
+        );
+      } on MissingPluginException {
+        for (final id in ids) {
+          await cancelNativeAlarm(id, silent: true, userId: userId);
+        }
+        return;
+      } on PlatformException catch (err) {
+        AppLog.warn(
+          'LocalNotifs',
+          'Failed to cancel alarm batch natively',
+          data: {'count': ids.length},
+          error: err,
+        );
+      }
+    }
+    await _removeScheduledIds(ids, userId: userId);
+  }
+
   /// Cancel many alarms by id.
   static Future<void> cancelMany(
     Set<int> ids, {
@@ -500,16 +756,20 @@ class LocalNotifs {
       }
       return;
     }
-    for (final id in ids) {
-      if (debugLogExactAlarms) {
-        AppLog.debug(
-          'LocalNotifs',
-          'CancelMany dispatch',
-          data: {'id': id},
-        );
+    if (debugCancelOverride == null) {
+      await cancelNativeAlarmsBatch(ids, userId: userId);
+    } else {
+      for (final id in ids) {
+        if (debugLogExactAlarms) {
+          AppLog.debug(
+            'LocalNotifs',
+            'CancelMany dispatch',
+            data: {'id': id},
+          );
+        }
+        await cancelNativeAlarm(id, silent: true, userId: userId);
+        await _removeScheduledId(id, userId: userId);
       }
-      await cancelNativeAlarm(id, silent: true, userId: userId);
-      await _removeScheduledId(id, userId: userId);
     }
     if (ids.isEmpty || !debugLogExactAlarms) return;
     final sample = ids.take(5).join(', ');
@@ -521,11 +781,30 @@ class LocalNotifs {
     );
   }
 
-  static Future<void> cancelAllNativeAlarms() async {
-    if (!isAndroidContext) return;
-    if (debugForceAndroid) return;
+  /// Cancel every natively tracked alarm in one bulk pass.
+  ///
+  /// Returns true when the native side cancelled and cleared its bookkeeping,
+  /// so callers only need to drop their own prefs entries.
+  static Future<bool> cancelAllNativeAlarms() async {
+    if (!isAndroidContext) return false;
+    if (debugForceAndroid) return false;
     try {
-      await _channel.invokeMethod('cancelAllNativeAlarms');
+      final result = await _channel
+          .invokeMethod<Map<Object?, Object?>>('cancelAllNativeAlarms');
+      if (debugLogExactAlarms) {
+        AppLog.debug(
+          'LocalNotifs',
+          'Cancelled all native alarms',
+          data: {
+            'tracked': result?['tracked'],
+            'cancelled': result?['cancelled'],
+            'elapsedMs': result?['elapsedMs'],
+          },
+        );
+      }
+      return true;
+    } on MissingPluginException {
+      return false;
     } on PlatformException catch (err) {
       if (debugLogExactAlarms) {
         AppLog.warn(
@@ -534,9 +813,53 @@ class LocalNotifs {
           error: err,
         );
       }
+      return false;
+    }
+  }
+
+  /// Native alarm delivery latency in ms, measured from each alarm's
+  /// scheduled time to the receiver, foreground service, and alarm screen.
+  /// The `wakeLockHold` stage is how long each alarm held its wake lock.
+  ///
+  /// Shape: `{count, sdk, stages: {stage: {count, p50, p95, p99}},
+  /// bySdk: {sdk: {stage: {...}}}}`. Null when unavailable.
+  static Future<Map<String, dynamic>?> alarmDeliveryStats() async {
+    if (!isAndroidContext || debugForceAndroid) return null;
+    try {
+      final result = await _channel
+          .invokeMethod<Map<Object?, Object?>>('alarmDeliveryStats');
+      if (result == null) return null;
+      return _stringKeyed(result);
+    } on MissingPluginException {
+      return null;
+    } on PlatformException catch (err) {
+      if (debugLogExactAlarms) {
+        AppLog.warn(
+          'LocalNotifs',
+          'alarmDeliveryStats failed',
+          error: err,
+        );
+      }
+      return null;
     }
   }
 
+  static Map<String, dynamic> _stringKeyed(Map<Object?, Object?> raw) {
+    return raw.map(
+      (key, value) => MapEntry(
+        '$key',
+        value is Map<Object?, Object?> ? _stringKeyed(value) : value,
+      ),
+    );
+  }
+
+  /// Drop ids from the per-user class map without touching native alarms.
+  static Future<void> forgetScheduledIds(
+    Set<int> ids, {
+    String? userId,
+  }) =>
+      _removeScheduledIds(ids, userId: userId);
+
   /// Show an immediate heads-up notification.
   static Future<bool> showHeadsUp({
     required int id,
@@ -940,6 +1263,53 @@ class LocalNotifs {
     }
   }
 
+  /// Records a batch of armed alarms and clears their stale acks, writing
+  /// each prefs blob once.
+  static Future<void> _recordScheduledIds(
+    List<NativeAlarmRequest> armed, {
+    String? userId,
+  }) async {
+    if (armed.isEmpty) return;
+    final sp = await SharedPreferences.getInstance();
+    final map = await _loadClassMap(sp, userId: userId);
+    for (final r in armed) {
+      map.putIfAbsent(r.classId, () => <int>{}).add(r.id);
+    }
+    await _storeClassMap(sp, map, userId: userId);
+
+    final ackMap = await _loadAckMap(sp, userId: userId);
+    var ackDirty = false;
+    for (final r in armed) {
+      final keys = ackMap[r.classId];
+      if (keys != null && keys.remove(r.occurrenceKey)) {
+        ackDirty = true;
+        if (keys.isEmpty) ackMap.remove(r.classId);
+      }
+    }
+    if (ackDirty) {
+      await _storeAckMap(sp, ackMap, userId: userId);
+    }
+  }
+
+  static Future<void> _removeScheduledIds(
+    Set<int> ids, {
+    String? userId,
+  }) async {
+    if (ids.isEmpty) return;
+    final sp = await SharedPreferences.getInstance();
+    final map = await _loadClassMap(sp, userId: userId);
+    var dirty = false;
+    map.removeWhere((_, classIds) {
+      final before = classIds.length;
+      classIds.removeAll(ids);
+      if (classIds.length != before || classIds.isEmpty) dirty = true;
+      return classIds.isEmpty;
+    });
+    if (dirty) {
+      await _storeClassMap(sp, map, userId: userId);
+    }
+  }
+
   static Future<Map<int, Set<int>>> _loadClassMap(
     SharedPreferences sp, {
     String? userId,
@@ -1246,6 +1616,82 @@ class LocalNotifs {
   }
 }
 
+/// One alarm in a [LocalNotifs.scheduleNativeAlarmsBatch] call.
+class NativeAlarmRequest {
+  const NativeAlarmRequest({
+    required this.id,
+    required this.at,
+    required this.title,
+    required this.body,
+    required this.classId,
+    required this.occurrenceKey,
+    this.subject,
+    this.room,
+    this.startTime,
+    this.endTime,
+    this.headsUpOnly = false,
+    this.chainAt,
+  });
+
+  final int id;
+  final DateTime at;
+  final String title;
+  final String body;
+  final int classId;
+  final String occurrenceKey;
+  final String? subject;
+  final String? room;
+  final String? startTime;
+  final String? endTime;
+  final bool headsUpOnly;
+
+  /// For a chained heads-up, when the native side should arm the full-screen
+  /// alarm after posting the heads-up at [at].
+  final DateTime? chainAt;
+
+  /// 32-bit FNV-1a over every field the native side arms with. Stable across
+  /// runs so the reconciler can tell an unchanged alarm from an edited one.
+  int get contentHash {
+    final source = [
+      id,
+      at.millisecondsSinceEpoch,
+      title,
+      body,
+      classId,
+      occurrenceKey,
+      subject ?? '',
+      room ?? '',
+      startTime ?? '',
+      endTime ?? '',
+      headsUpOnly ? 1 : 0,
+      // Appended only when set so unchained hashes stay as they were.
+      if (chainAt != null) chainAt!.millisecondsSinceEpoch,
+    ].join('\u0000');
+    var hash = 0x811c9dc5;
+    for (final byte in utf8.encode(source)) {
+      hash ^= byte;
+      hash = (hash * 0x01000193) & 0xffffffff;
+    }
+    return hash.toSigned(32);
+  }
+
+  Map<String, Object?> toMap() => {
+        'id': id,
+        'atMillis': at.millisecondsSinceEpoch,
+        'title': title,
+        'body': body,
+        'classId': classId,
+        'occurrenceKey': occurrenceKey,
+        'subject': subject,
+        'room': room,
+        'startTime': startTime,
+        'endTime': endTime,
+        'headsUpOnly': headsUpOnly,
+        if (chainAt != null) 'chainAtMillis': chainAt!.millisecondsSinceEpoch,
+        'hash': contentHash,
+      };
+}
+
 class AlarmReadiness {
   final bool exactAlarmAllowed;
   final bool notificationsAllowed;
@@ -0,0 +1,280 @@
+import 'dart:convert';
+import 'dart:io';
+
+import 'package:flutter/foundation.dart' show debugPrint;
+import 'package:flutter_test/flutter_test.dart';
+import 'package:mysched/services/notification_scheduler.dart';
+import 'package:mysched/services/schedule_repository.dart';
+import 'package:mysched/utils/local_notifs.dart';
+import 'package:shared_preferences/shared_preferences.dart';
+
+import '../test_helpers/supabase_stub.dart';
+
+// Scaling benchmarks for NotifScheduler. Skipped by default; run with
+//
+//   flutter test test/benchmarks --dart-define=MYSCHED_BENCH=true
+//
+// Results go to bench_output.json. Each median is compared with
+// notif_scheduler_baseline.json, and a run fails when a median exceeds its
+// baseline by more than the baseline's tolerance. Results without a
+// recorded median are listed but not compared. Add
+// --dart-define=MYSCHED_BENCH_UPDATE=true to rewrite the baseline from
+// this run instead. Memory is reported as the resident set size delta,
+// since the VM exposes no allocation counts to tests.
+const _enabled = bool.fromEnvironment('MYSCHED_BENCH');
+const _updateBaseline = bool.fromEnvironment('MYSCHED_BENCH_UPDATE');
+const _baselinePath = 'test/benchmarks/notif_scheduler_baseline.json';
+const _outputPath = 'bench_output.json';
+
+const _sizes = [50, 500, 5000];
+const _warmup = 2;
+const _planIterations = 20;
+const _diffIterations = 50;
+const _resyncIterations = 5;
+
+class _FakeScheduleApi extends ScheduleApi {
+  _FakeScheduleApi(this.classes);
+
+  final List<ClassItem> classes;
+
+  @override
+  Future<List<ClassItem>> getMyClasses({bool forceRefresh = false}) async =>
+      List<ClassItem>.from(classes);
+
+  @override
+  Future<List<ClassItem>> fetchClasses() async => classes;
+}
+
+List<ClassItem> _syntheticSchedule(int size) {
+  return [
+    for (var i = 0; i < size; i++)
+      ClassItem(
+        id: i + 1,
+        day: DateTime.monday + i % 7,
+        start: '${7 + i % 12}:${(i * 5 % 60).toString().padLeft(2, '0')}',
+        end: '${8 + i % 12}:${(i * 5 % 60).toString().padLeft(2, '0')}',
+        title: 'Class ${i + 1}',
+        room: 'Room ${i % 40}',
+        instructor: 'Instructor ${i % 25}',
+        enabled: i % 9 != 0,
+        isCustom: i % 5 == 0,
+      ),
+  ];
+}
+
+Map<String, Object> _summarize(
+  List<int> micros,
+  int rssBefore,
+  int rssAfter,
+) {
+  final sorted = [...micros]..sort();
+  return {
+    'iterations': sorted.length,
+    'median_us': sorted[sorted.length ~/ 2],
+    'p90_us': sorted[(sorted.length * 9 ~/ 10).clamp(0, sorted.length - 1)],
+    'max_us': sorted.last,
+    'rss_delta_bytes': rssAfter - rssBefore,
+  };
+}
+
+Future<Map<String, Object>> _measure(
+  int iterations,
+  Future<void> Function() body, {
+  Future<void> Function()? before,
+}) async {
+  for (var i = 0; i < _warmup; i++) {
+    await before?.call();
+    await body();
+  }
+  final micros = <int>[];
+  final rssBefore = ProcessInfo.currentRss;
+  for (var i = 0; i < iterations; i++) {
+    await before?.call();
+    final watch = Stopwatch()..start();
+    await body();
+    micros.add(watch.elapsedMicroseconds);
+  }
+  return _summarize(micros, rssBefore, ProcessInfo.currentRss);
+}
+
+void main() {
+  setUpAll(() async {
+    await SupabaseTestBootstrap.ensureInitialized();
+  });
+  TestWidgetsFlutterBinding.ensureInitialized();
+
+  final results = <String, Map<String, Object>>{};
+  var scheduledCount = 0;
+  final now = DateTime(2024, 1, 3, 9, 30);
+
+  setUp(() {
+    SharedPreferences.setMockInitialValues(<String, Object>{});
+    LocalNotifs.debugForceAndroid = true;
+    LocalNotifs.debugScheduleOverride = ({
+      required int id,
+      required DateTime at,
+      required String title,
+      required String body,
+      required int classId,
+      required String occurrenceKey,
+      String? subject,
+      String? room,
+      String? startTime,
+      String? endTime,
+      bool headsUpOnly = false,
+      String? userId,
+    }) async {
+      scheduledCount++;
+      return true;
+    };
+    LocalNotifs.debugCancelManyOverride = (ids, {userId}) async {};
+  });
+
+  tearDown(() {
+    LocalNotifs.debugForceAndroid = false;
+    LocalNotifs.debugScheduleOverride = null;
+    LocalNotifs.debugCancelManyOverride = null;
+  });
+
+  tearDownAll(NotifScheduler.debugResetPlanner);
+
+  for (final size in _sizes) {
+    test(
+      'plan, diff, and resync at $size classes',
+      () async {
+        final classes = _syntheticSchedule(size);
+        void plan() => NotifScheduler.preview(
+              uid: 'bench-user',
+              classes: classes,
+              leadMinutes: 5,
+              now: now,
+            );
+
+        results['plan_cold/$size'] = await _measure(
+          _planIterations,
+          () async => plan(),
+          before: () async => NotifScheduler.debugResetPlanner(),
+        );
+        results['plan_warm/$size'] = await _measure(
+          _planIterations,
+          () async => plan(),
+        );
+
+        final previous = {for (var i = 0; i < size * 2; i++) i};
+        final next = {for (var i = size; i < size * 3; i++) i};
+        results['diff/$size'] = await _measure(_diffIterations, () async {
+          NotifScheduler.diffScheduled(
+            previousNative: previous,
+            previousNotif: const <int>{},
+            nextNative: next,
+            nextNotif: const <int>{},
+          );
+        });
+
+        // Per-alarm id bookkeeping in LocalNotifs, channel stubbed out.
+        final requests = [
+          for (var i = 0; i < size; i++)
+            NativeAlarmRequest(
+              id: i + 1,
+              at: DateTime.now().add(Duration(days: 1, minutes: i)),
+              title: 'Class ${i + 1}',
+              body: 'Room ${i % 40}',
+              classId: i + 1,
+              occurrenceKey: '20240104',
+            ),
+        ];
+        final bookkeeping = await _measure(
+          _resyncIterations,
+          () => LocalNotifs.scheduleNativeAlarmsBatch(
+            requests,
+            userId: 'bench-user',
+          ),
+          before: () async {
+            SharedPreferences.setMockInitialValues(<String, Object>{});
+          },
+        );
+        results['bookkeeping/$size'] = {
+          ...bookkeeping,
+          'us_per_alarm': (bookkeeping['median_us']! as int) ~/ size,
+        };
+
+        final api = _FakeScheduleApi(classes);
+        scheduledCount = 0;
+        final resync = await _measure(
+          _resyncIterations,
+          () => NotifScheduler.resync(api: api, userId: 'bench-user'),
+          before: () async {
+            SharedPreferences.setMockInitialValues(<String, Object>{});
+            NotifScheduler.resetIncrementalState();
+          },
+        );
+        // Every run starts from empty bookkeeping, so each arms the full plan.
+        final alarms = scheduledCount ~/ (_warmup + _resyncIterations);
+        results['resync/$size'] = {
+          ...resync,
+          'alarms': alarms,
+          'us_per_alarm':
+              alarms == 0 ? 0 : (resync['median_us']! as int) ~/ alarms,
+        };
+      },
+      skip: _enabled ? false : 'Pass --dart-define=MYSCHED_BENCH=true to run',
+      timeout: const Timeout(Duration(minutes: 10)),
+    );
+  }
+
+  test(
+    'stays within the checked-in baseline',
+    () async {
+      await File(_outputPath).writeAsString(
+        const JsonEncoder.withIndent('  ').convert({
+          'schema': 1,
+          'platform': Platform.operatingSystem,
+          'dart': Platform.version,
+          'results': results,
+        }),
+      );
+
+      final baselineFile = File(_baselinePath);
+      final baseline =
+          jsonDecode(await baselineFile.readAsString()) as Map<String, dynamic>;
+      final tolerance = (baseline['tolerance'] as num?)?.toDouble() ?? 2.0;
+
+      if (_updateBaseline) {
+        final updated = const JsonEncoder.withIndent('  ').convert({
+          'schema': 1,
+          'tolerance': tolerance,
+          'results': {
+            for (final entry in results.entries)
+              entry.key: {'median_us': entry.value['median_us']},
+          },
+        });
+        await baselineFile.writeAsString('$updated\n');
+        return;
+      }
+
+      final expected = baseline['results'] as Map<String, dynamic>? ?? {};
+      final regressions = <String>[];
+      final unrecorded = <String>[];
+      for (final entry in results.entries) {
+        final recorded = expected[entry.key] as Map<String, dynamic>?;
+        final limit = recorded?['median_us'];
+        if (limit is! num) {
+          unrecorded.add(entry.key);
+          continue;
+        }
+        final median = entry.value['median_us']! as int;
+        if (median > limit * tolerance) {
+          regressions.add('${entry.key}: ${median}us vs baseline ${limit}us');
+        }
+      }
+      if (unrecorded.isNotEmpty) {
+        debugPrint(
+          'No baseline median for ${unrecorded.join(', ')}; rerun with '
+          '--dart-define=MYSCHED_BENCH_UPDATE=true to record them.',
+        );
+      }
+      expect(regressions, isEmpty, reason: regressions.join('\n'));
+    },
+    skip: _enabled ? false : 'Pass --dart-define=MYSCHED_BENCH=true to run',
+  );
+}
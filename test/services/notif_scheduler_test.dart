@@ -1,6 +1,7 @@
 import 'dart:convert';
 
 import 'package:flutter_test/flutter_test.dart';
+import 'package:mysched/services/data_sync.dart';
 import 'package:mysched/services/notification_scheduler.dart';
 import 'package:mysched/services/schedule_repository.dart';
 import '../test_helpers/supabase_stub.dart';
@@ -20,6 +21,34 @@ class _FakeScheduleApi extends ScheduleApi {
   Future<List<ClassItem>> fetchClasses() async => classes;
 }
 
+class _CountingScheduleApi extends _FakeScheduleApi {
+  _CountingScheduleApi(super.classes);
+
+  int fetches = 0;
+
+  @override
+  Future<List<ClassItem>> getMyClasses({bool forceRefresh = false}) {
+    fetches++;
+    return super.getMyClasses(forceRefresh: forceRefresh);
+  }
+}
+
+class _FlakyScheduleApi extends _CountingScheduleApi {
+  _FlakyScheduleApi(super.classes);
+
+  bool failNext = false;
+
+  @override
+  Future<List<ClassItem>> getMyClasses({bool forceRefresh = false}) {
+    if (failNext) {
+      failNext = false;
+      fetches++;
+      return Future.error(StateError('offline'));
+    }
+    return super.getMyClasses(forceRefresh: forceRefresh);
+  }
+}
+
 void main() {
   setUpAll(() async {
     await SupabaseTestBootstrap.ensureInitialized();
@@ -34,6 +63,8 @@ void main() {
     LocalNotifs.debugCancelManyOverride = null;
     LocalNotifs.debugSnoozeFeedbackOverride = (_) async {};
     NotifScheduler.onSnoozed = null;
+    NotifScheduler.chainHeadsUp = true;
+    NotifScheduler.horizon = const AlarmHorizon.adaptive();
   });
 
   tearDown(() {
@@ -43,6 +74,8 @@ void main() {
     LocalNotifs.debugCancelManyOverride = null;
     LocalNotifs.debugSnoozeFeedbackOverride = null;
     NotifScheduler.onSnoozed = null;
+    NotifScheduler.chainHeadsUp = true;
+    NotifScheduler.horizon = const AlarmHorizon.adaptive();
   });
 
   group('preview', () {
@@ -72,6 +105,48 @@ void main() {
       expect(previews, hasLength(greaterThanOrEqualTo(1)));
       expect(previews.first.alarmAt, DateTime(2024, 1, 1, 7, 45));
     });
+
+    test('wraps around the week in alarm order', () {
+      // Sunday night: the next starts are late Sunday, then next week.
+      final now = DateTime(2024, 1, 7, 23, 0);
+      ClassItem item(int id, int day, String start) => ClassItem(
+            id: id,
+            day: day,
+            start: start,
+            end: '23:59',
+            title: 'Class $id',
+            room: 'Room $id',
+            instructor: 'Prof. $id',
+            enabled: true,
+            isCustom: false,
+          );
+
+      final previews = NotifScheduler.preview(
+        uid: 'user-week',
+        classes: [
+          item(1, DateTime.monday, '08:00'),
+          item(2, DateTime.sunday, '22:00'),
+          item(3, DateTime.sunday, '23:30'),
+          item(4, DateTime.sunday, '23:00'),
+        ],
+        leadMinutes: 15,
+        now: now,
+      );
+
+      expect(
+        previews.map((p) => (p.classId, p.alarmAt)).toList(),
+        [
+          (3, DateTime(2024, 1, 7, 23, 15)),
+          (1, DateTime(2024, 1, 8, 7, 45)),
+          (2, DateTime(2024, 1, 14, 21, 45)),
+          (4, DateTime(2024, 1, 14, 22, 45)),
+          (3, DateTime(2024, 1, 14, 23, 15)),
+          (1, DateTime(2024, 1, 15, 7, 45)),
+          (2, DateTime(2024, 1, 21, 21, 45)),
+          (4, DateTime(2024, 1, 21, 22, 45)),
+        ],
+      );
+    });
   });
 
   group('snooze', () {
@@ -336,6 +411,320 @@ void main() {
 
       expect(cancelled.toSet(), equals({101, 102}));
     });
+
+    test('flags the pre-alarm as heads-up only', () async {
+      NotifScheduler.chainHeadsUp = false;
+      final tomorrow = DateTime.now().add(const Duration(days: 1));
+      final headsUpFlags = <bool>[];
+      LocalNotifs.debugScheduleOverride = ({
+        required int id,
+        required DateTime at,
+        required String title,
+        required String body,
+        required int classId,
+        required String occurrenceKey,
+        String? subject,
+        String? room,
+        String? startTime,
+        String? endTime,
+        bool headsUpOnly = false,
+        String? userId,
+      }) async {
+        headsUpFlags.add(headsUpOnly);
+        return true;
+      };
+
+      await NotifScheduler.resync(
+        api: _FakeScheduleApi([
+          ClassItem(
+            id: 7,
+            day: tomorrow.weekday,
+            start: '10:00',
+            end: '11:00',
+            title: 'Physics',
+            room: 'Lab 2',
+            instructor: 'Dr. Cruz',
+            enabled: true,
+            isCustom: false,
+          ),
+        ]),
+        userId: 'user-batch',
+      );
+
+      expect(headsUpFlags, contains(true));
+      expect(headsUpFlags, contains(false));
+    });
+
+    test('chains the heads-up into a single native alarm', () async {
+      final tomorrow = DateTime.now().add(const Duration(days: 1));
+      final scheduled = <int, DateTime>{};
+      final headsUpFlags = <bool>[];
+      LocalNotifs.debugScheduleOverride = ({
+        required int id,
+        required DateTime at,
+        required String title,
+        required String body,
+        required int classId,
+        required String occurrenceKey,
+        String? subject,
+        String? room,
+        String? startTime,
+        String? endTime,
+        bool headsUpOnly = false,
+        String? userId,
+      }) async {
+        scheduled[id] = at;
+        headsUpFlags.add(headsUpOnly);
+        return true;
+      };
+
+      await NotifScheduler.resync(
+        api: _FakeScheduleApi([
+          ClassItem(
+            id: 7,
+            day: tomorrow.weekday,
+            start: '10:00',
+            end: '11:00',
+            title: 'Physics',
+            room: 'Lab 2',
+            instructor: 'Dr. Cruz',
+            enabled: true,
+            isCustom: false,
+          ),
+        ]),
+        userId: 'user-chain',
+      );
+
+      // Two upcoming occurrences, one registration each.
+      expect(scheduled, hasLength(2));
+      expect(headsUpFlags, everyElement(isTrue));
+    });
+
+    test('applies a class toggle without a full resync', () async {
+      final tomorrow = DateTime.now().add(const Duration(days: 1));
+      final scheduled = <int, int>{};
+      LocalNotifs.debugScheduleOverride = ({
+        required int id,
+        required DateTime at,
+        required String title,
+        required String body,
+        required int classId,
+        required String occurrenceKey,
+        String? subject,
+        String? room,
+        String? startTime,
+        String? endTime,
+        bool headsUpOnly = false,
+        String? userId,
+      }) async {
+        scheduled[id] = classId;
+        return true;
+      };
+      ClassItem item(int id, String start) => ClassItem(
+            id: id,
+            day: tomorrow.weekday,
+            start: start,
+            end: '12:00',
+            title: 'Class $id',
+            room: 'Room $id',
+            instructor: 'Prof. $id',
+            enabled: true,
+            isCustom: false,
+          );
+      final api = _FakeScheduleApi([item(7, '09:00'), item(8, '10:00')]);
+
+      NotifScheduler.resetIncrementalState();
+      await NotifScheduler.resync(api: api, userId: 'user-inc');
+      final disabledIds = {
+        for (final e in scheduled.entries)
+          if (e.value == 7) e.key,
+      };
+      expect(disabledIds, hasLength(2));
+      scheduled.clear();
+
+      await NotifScheduler.applyScheduleEvent(
+        ScheduleEvent(
+          type: ScheduleChangeType.classDisabled,
+          classId: 7,
+          userId: 'user-inc',
+          timestamp: DateTime.now(),
+        ),
+        api: api,
+      );
+
+      expect(scheduled, isEmpty);
+      final prefs = await SharedPreferences.getInstance();
+      final stored = jsonDecode(
+        prefs.getString('scheduled_native_alarm_ids')!,
+      ) as Map<String, dynamic>;
+      final ids = (stored['user-inc'] as List).map((e) => int.parse('$e'));
+      expect(ids, hasLength(2));
+      expect(ids.toSet().intersection(disabledIds), isEmpty);
+    });
+
+    test('falls back to a resync when an incremental update fails', () async {
+      LocalNotifs.debugScheduleOverride = ({
+        required int id,
+        required DateTime at,
+        required String title,
+        required String body,
+        required int classId,
+        required String occurrenceKey,
+        String? subject,
+        String? room,
+        String? startTime,
+        String? endTime,
+        bool headsUpOnly = false,
+        String? userId,
+      }) async =>
+          true;
+      final api = _FlakyScheduleApi([
+        ClassItem(
+          id: 5,
+          day: DateTime.now().add(const Duration(days: 1)).weekday,
+          start: '09:00',
+          end: '10:00',
+          title: 'Physics',
+          room: 'Room 5',
+          instructor: 'Prof. Cruz',
+          enabled: true,
+          isCustom: false,
+        ),
+      ]);
+
+      NotifScheduler.resetIncrementalState();
+      await NotifScheduler.resync(api: api, userId: 'user-flaky');
+      expect(api.fetches, 1);
+
+      // An edit refetches the class; that fetch fails, so a resync runs.
+      api.failNext = true;
+      await NotifScheduler.applyScheduleEvent(
+        ScheduleEvent(
+          type: ScheduleChangeType.classUpdated,
+          classId: 5,
+          userId: 'user-flaky',
+          timestamp: DateTime.now(),
+        ),
+        api: api,
+      );
+
+      expect(api.fetches, 3);
+    });
+
+    test('folds overlapping resyncs into one follow-up run', () async {
+      LocalNotifs.debugScheduleOverride = ({
+        required int id,
+        required DateTime at,
+        required String title,
+        required String body,
+        required int classId,
+        required String occurrenceKey,
+        String? subject,
+        String? room,
+        String? startTime,
+        String? endTime,
+        bool headsUpOnly = false,
+        String? userId,
+      }) async =>
+          true;
+      final api = _CountingScheduleApi([
+        ClassItem(
+          id: 3,
+          day: DateTime.monday,
+          start: '08:00',
+          end: '09:00',
+          title: 'Chemistry',
+          room: 'Lab 1',
+          instructor: 'Dr. Reyes',
+          enabled: true,
+          isCustom: false,
+        ),
+      ]);
+      NotifScheduler.resetResyncStats();
+
+      await Future.wait([
+        for (var i = 0; i < 4; i++)
+          NotifScheduler.resync(api: api, userId: 'user-flight'),
+      ]);
+
+      // One run for the first call, one follow-up for the other three.
+      expect(api.fetches, 2);
+      final stats = NotifScheduler.resyncStats();
+      expect(stats['requested'], 4);
+      expect(stats['runs'], 2);
+      expect(stats['coalesced'], 2);
+      expect(stats['saved'], 2);
+      expect(stats['running'], isFalse);
+    });
+  });
+
+  group('horizon', () {
+    test('adaptive span follows the longest gap between opens', () {
+      final now = DateTime(2024, 3, 1, 9);
+      final daily = [
+        for (var i = 5; i >= 1; i--) now.subtract(Duration(days: i)),
+      ];
+      expect(
+        AlarmHorizon.adaptiveSpan(daily, now),
+        AlarmHorizon.minAdaptiveSpan,
+      );
+      expect(
+        AlarmHorizon.adaptiveSpan(
+          [now.subtract(const Duration(days: 12)), now],
+          now,
+        ),
+        const Duration(days: 24),
+      );
+      expect(
+        AlarmHorizon.adaptiveSpan(
+          [now.subtract(const Duration(days: 31)), now],
+          now,
+        ),
+        AlarmHorizon.maxAdaptiveSpan,
+      );
+    });
+
+    test('count horizon plans that many occurrences per class', () async {
+      final tomorrow = DateTime.now().add(const Duration(days: 1));
+      final scheduled = <int>[];
+      LocalNotifs.debugScheduleOverride = ({
+        required int id,
+        required DateTime at,
+        required String title,
+        required String body,
+        required int classId,
+        required String occurrenceKey,
+        String? subject,
+        String? room,
+        String? startTime,
+        String? endTime,
+        bool headsUpOnly = false,
+        String? userId,
+      }) async {
+        scheduled.add(id);
+        return true;
+      };
+      NotifScheduler.horizon = const AlarmHorizon.count(5);
+
+      await NotifScheduler.resync(
+        api: _FakeScheduleApi([
+          ClassItem(
+            id: 9,
+            day: tomorrow.weekday,
+            start: '13:00',
+            end: '14:00',
+            title: 'History',
+            room: 'Hall A',
+            instructor: 'Prof. Lim',
+            enabled: true,
+            isCustom: false,
+          ),
+        ]),
+        userId: 'user-horizon',
+      );
+
+      expect(scheduled, hasLength(5));
+    });
   });
 
   group('preference migration', () {
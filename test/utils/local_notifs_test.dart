@@ -54,4 +54,36 @@ void main() {
     expect(prefs.containsKey('notif_class_schedule_map'), isFalse);
     expect(prefs.containsKey('notif_ack_map'), isFalse);
   });
+
+  test('native alarm content hash tracks armed fields', () {
+    NativeAlarmRequest request({
+      String room = 'Room 204',
+      bool headsUp = false,
+      DateTime? chainAt,
+    }) {
+      return NativeAlarmRequest(
+        id: 9001,
+        at: DateTime(2024, 1, 15, 7, 45),
+        title: 'Linear Algebra',
+        body: 'Starts at 8:00 AM',
+        classId: 42,
+        occurrenceKey: '20240115',
+        room: room,
+        headsUpOnly: headsUp,
+        chainAt: chainAt,
+      );
+    }
+
+    final base = request().contentHash;
+    expect(request().contentHash, base);
+    expect(request(room: 'Room 205').contentHash, isNot(base));
+    expect(request(headsUp: true).contentHash, isNot(base));
+    final chainAt = DateTime(2024, 1, 15, 7, 46);
+    final chained = request(headsUp: true, chainAt: chainAt);
+    expect(chained.contentHash, isNot(request(headsUp: true).contentHash));
+    expect(chained.toMap()['chainAtMillis'], chainAt.millisecondsSinceEpoch);
+    expect(request().toMap().containsKey('chainAtMillis'), isFalse);
+    expect(base, inInclusiveRange(-0x80000000, 0x7fffffff));
+    expect(request().toMap()['hash'], base);
+  });
 }